@@ -0,0 +1,203 @@
+package com.audioapp;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.util.logging.Logger;
+
+/**
+ * Writes decoded 16-bit PCM samples to the sound card.
+ * Wraps a SourceDataLine and converts samples into a reusable byte buffer,
+ * so writing a frame does not allocate.
+ */
+public class AudioOutput implements AudioSink {
+    
+    private static final Logger LOGGER = Logger.getLogger(AudioOutput.class.getName());
+    
+    private volatile SourceDataLine line;
+    private AudioFormat format;
+    private byte[] byteBuffer = new byte[0];
+    
+    // Line frame position at the last flush, where the reported position starts
+    private volatile long positionBase;
+    
+    /**
+     * Opens the output line for the given stream format and starts it.
+     * 
+     * @param sampleRate Sample rate in Hz
+     * @param channels Number of interleaved channels
+     * @throws LineUnavailableException If no matching line is available
+     */
+    public void open(int sampleRate, int channels) throws LineUnavailableException {
+        open(sampleRate, channels, 0);
+    }
+    
+    /**
+     * Opens the output line with a buffer of the given length and starts it.
+     * 
+     * @param sampleRate Sample rate in Hz
+     * @param channels Number of interleaved channels
+     * @param bufferMillis Length of the line buffer, 0 for the line's default
+     * @throws LineUnavailableException If no matching line is available
+     */
+    @Override
+    public void open(int sampleRate, int channels, int bufferMillis) throws LineUnavailableException {
+        close();
+        
+        format = new AudioFormat(sampleRate, 16, channels, true, false);
+        line = AudioSystem.getSourceDataLine(format);
+        if (bufferMillis > 0) {
+            int frames = Math.max(1, (int) ((long) sampleRate * bufferMillis / 1000));
+            line.open(format, frames * format.getFrameSize());
+        } else {
+            line.open(format);
+        }
+        line.start();
+        positionBase = 0;
+        
+        LOGGER.info("Audio output opened: " + format + ", buffer: " + line.getBufferSize() + " bytes");
+    }
+    
+    /**
+     * Checks if the output line is open.
+     * 
+     * @return true if open
+     */
+    @Override
+    public boolean isOpen() {
+        return line != null && line.isOpen();
+    }
+    
+    @Override
+    public boolean isRealtime() {
+        return true;
+    }
+    
+    /**
+     * Gets the format of the open line.
+     * 
+     * @return The audio format, or null if not open
+     */
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+    
+    /**
+     * Gets the size of the line's buffer, which may differ from the size
+     * requested when opening.
+     * 
+     * @return Buffer length in sample frames, or 0 if not open
+     */
+    @Override
+    public int getBufferFrames() {
+        SourceDataLine current = line;
+        if (current == null || format == null) {
+            return 0;
+        }
+        return current.getBufferSize() / format.getFrameSize();
+    }
+    
+    /**
+     * Writes interleaved samples, blocking while the line buffer is full
+     * or the line is paused.
+     * 
+     * @param samples Sample buffer
+     * @param offset Index of the first sample to write
+     * @param length Number of samples to write
+     */
+    @Override
+    public void write(short[] samples, int offset, int length) {
+        SourceDataLine current = line;
+        if (current == null || !current.isOpen()) {
+            return;
+        }
+        
+        int byteLength = length * 2;
+        if (byteBuffer.length < byteLength) {
+            byteBuffer = new byte[byteLength];
+        }
+        
+        // Little-endian 16-bit PCM
+        for (int i = 0, b = 0; i < length; i++, b += 2) {
+            short sample = samples[offset + i];
+            byteBuffer[b] = (byte) sample;
+            byteBuffer[b + 1] = (byte) (sample >> 8);
+        }
+        
+        current.write(byteBuffer, 0, byteLength);
+    }
+    
+    /**
+     * Pauses the line. Buffered samples are kept and continue playing on resume.
+     */
+    @Override
+    public void pause() {
+        if (line != null) {
+            line.stop();
+        }
+    }
+    
+    /**
+     * Resumes a paused line at the exact sample where it stopped.
+     */
+    @Override
+    public void resume() {
+        if (line != null) {
+            line.start();
+        }
+    }
+    
+    /**
+     * Blocks until all buffered samples have been played.
+     */
+    @Override
+    public void drain() {
+        if (line != null) {
+            line.drain();
+        }
+    }
+    
+    /**
+     * Discards buffered samples and stops the line without closing it, so
+     * the next session starts without renegotiating with the device.
+     * Unblocks a thread waiting in write.
+     */
+    @Override
+    public void flush() {
+        SourceDataLine current = line;
+        if (current != null) {
+            current.stop();
+            current.flush();
+            positionBase = current.getLongFramePosition();
+        }
+    }
+    
+    /**
+     * Gets the number of sample frames played since the line was opened
+     * or last flushed.
+     * 
+     * @return Frames played
+     */
+    @Override
+    public long getFramePosition() {
+        SourceDataLine current = line;
+        return current != null ? current.getLongFramePosition() - positionBase : 0;
+    }
+    
+    /**
+     * Discards buffered samples and closes the line.
+     * Unblocks a thread waiting in write.
+     */
+    @Override
+    public void close() {
+        SourceDataLine current = line;
+        line = null;
+        if (current != null) {
+            current.stop();
+            current.flush();
+            current.close();
+        }
+    }
+}
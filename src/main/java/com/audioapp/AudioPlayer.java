@@ -1,47 +1,149 @@
 package com.audioapp;
 
-import javazoom.jl.player.Player;
-import javazoom.jl.player.advanced.AdvancedPlayer;
-import javazoom.jl.player.advanced.PlaybackEvent;
-import javazoom.jl.player.advanced.PlaybackListener;
-
-import java.io.BufferedInputStream;
+import javax.sound.sampled.AudioFormat;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
 /**
- * Handles the audio playback functionality using JLayer.
+ * Handles the audio playback functionality using JLayer for MP3 and the
+ * Java Sound API for FLAC, WAV and AIFF.
  * This class manages loading, playing, pausing, and stopping audio files.
+ * Frames are decoded on a decoder thread into a
+ * lock-free ring buffer, which a separate output thread drains into an
+ * AudioOutput. Both threads live as long as the player and take sessions
+ * from queues, so play, seek and stop never create or join threads.
+ * Pausing only gates the output and keeps the decoder and buffers alive.
+ * A queued next file is opened and its head decoded while the current one
+ * plays; when the current track ends its trimmed PCM is followed directly
+ * by the next track's in the same ring buffer, so there is no gap.
+ * Decoded audio is kept in a PcmBlockCache, so seeking back and A-B loops
+ * replay recent audio without decoding it again.
  */
 public class AudioPlayer {
     
     private static final Logger LOGGER = Logger.getLogger(AudioPlayer.class.getName());
     
-    // Audio player
-    private AdvancedPlayer player;
+    // Default amount of decoded audio kept ahead of the output
+    private static final int DEFAULT_BUFFER_AHEAD_MS = 500;
+    
+    // Number of sample frames the output thread moves to the line at once
+    private static final int OUTPUT_CHUNK_FRAMES = 1024;
+    
+    // How long a thread parks when the ring buffer is full or empty
+    private static final long RING_WAIT_NANOS = 1_000_000;
+    
+    // Amount of the next track decoded before the current one ends
+    private static final int PREROLL_MS = 250;
+    
+    // Line buffer and decode-ahead depth of the low-latency output mode
+    private static final int LOW_LATENCY_LINE_MS = 20;
+    private static final int LOW_LATENCY_AHEAD_MS = 60;
+    
+    // Longest crossfade between playlist tracks
+    public static final int MAX_CROSSFADE_MS = 12000;
+    
+    // Shortest A-B loop, and how far past the audible sample decoding may be
+    private static final int MIN_LOOP_MS = 100;
+    private static final int LINE_AHEAD_MS = 1000;
+    
+    // Opens and pre-decodes queued tracks off the playback threads
+    private static final ExecutorService PREFETCH = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "AudioPlayer-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
     
-    // File input stream
-    private FileInputStream fileInputStream;
-    private BufferedInputStream bufferedInputStream;
+    // Current playback session, null when stopped
+    private volatile Session session;
     
-    // Current file
-    private File currentFile;
+    // Sessions handed to the long-lived decoder and output threads
+    private final BlockingQueue<Session> decodeQueue = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Session> outputQueue = new LinkedBlockingQueue<>();
+    private Thread decoderWorker;
+    private Thread outputWorker;
+    
+    // The audible track, null until a file is loaded
+    private volatile Track track;
+    
+    // File to continue with gaplessly, and its pre-decoded head once ready
+    private volatile File nextFile;
+    private final AtomicReference<PreparedTrack> preparedNext = new AtomicReference<>();
     
     // Playback state
-    private boolean isPaused = false;
-    private boolean isStopped = true;
+    private volatile boolean isPaused = false;
+    private volatile boolean isStopped = true;
     private int pausedPosition = 0;
-    private int totalDuration = 0;
-    private int currentPosition = 0;
     
-    // Volume control (0-100)
+    // Position of the audible sample, advanced by the output thread
+    private final PlaybackClock clock = new PlaybackClock();
+    
+    // Volume control (0-100), applied in software by the gain stage
     private int volume = 80;
+    private final GainStage gainStage = new GainStage();
+    
+    // Tone shaping ahead of the gain stage
+    private final ParametricEqualizer equalizer = new ParametricEqualizer();
+    
+    // Lock the output thread waits on while paused
+    private final Object pauseLock = new Object();
+    
+    // Decode-ahead depth and output starvation statistics
+    private volatile int bufferAheadMs = DEFAULT_BUFFER_AHEAD_MS;
+    
+    // Size of the sound card line buffer, 0 for the line's default
+    private volatile int lineBufferMs = 0;
+    
+    // Fixed output sample rate, 0 to open the line at each track's rate
+    private volatile int outputSampleRate = 0;
     
-    // Player thread
-    private Thread playerThread;
+    // Overlap between a track and the next one, 0 for a gapless transition
+    private volatile int crossfadeMs = 0;
+    
+    // Playback speed, stretched in time without changing pitch
+    private volatile double playbackSpeed = 1.0;
+    private final AtomicLong underrunCount = new AtomicLong();
+    
+    // Command waiting for its first audible sample, and the last measured latency
+    private final AtomicReference<LatencyProbe> latencyProbe = new AtomicReference<>();
+    private volatile long lastLatencyNanos = -1;
+    
+    // Why the last session ended before the end of the track, null if it did not fail
+    private volatile Exception playbackError;
+    
+    // Creates the player's sink, the sound card unless rendering offline
+    private volatile Supplier<? extends AudioSink> sinkFactory = AudioOutput::new;
+    
+    // Sink shared by all sessions, created from the factory when first needed
+    private AudioSink sink;
+    
+    // Output thread only: the sink it last opened, and the line buffer it was opened with
+    private AudioSink openSink;
+    private int openSinkBufferMs;
+    
+    // Recently decoded audio, shared by all tracks and sessions
+    private final PcmBlockCache pcmCache = new PcmBlockCache(PcmBlockCache.DEFAULT_BUDGET_BYTES);
+    
+    /**
+     * Creates a player with the default volume applied.
+     */
+    public AudioPlayer() {
+        gainStage.setVolume(volume);
+    }
     
     /**
      * Loads an audio file for playback.
@@ -52,23 +154,22 @@ public class AudioPlayer {
     public boolean loadFile(File file) throws Exception {
         // Clean up existing resources
         stop();
+        Track previous = track;
+        track = null;
+        if (previous != null) {
+            previous.close();
+        }
         
         try {
-            currentFile = file;
-            
             // Reset state
             isPaused = false;
             isStopped = true;
             pausedPosition = 0;
             
-            // Open file streams
-            fileInputStream = new FileInputStream(file);
-            bufferedInputStream = new BufferedInputStream(fileInputStream);
-            
-            // Calculate the total duration (approximate)
-            totalDuration = calculateDuration(file);
+            Track loaded = openTrack(file);
+            track = loaded;
             
-            LOGGER.info("Loaded audio file: " + file.getName() + ", Duration: " + totalDuration + "ms");
+            LOGGER.info("Loaded audio file: " + file.getName() + ", Duration: " + loaded.duration + "ms");
             
             return true;
         } catch (Exception e) {
@@ -81,17 +182,20 @@ public class AudioPlayer {
      * Starts or resumes playback of the loaded audio file.
      */
     public void play() throws Exception {
-        if (currentFile == null) {
+        long commandNanos = System.nanoTime();
+        if (track == null) {
             throw new Exception("No file loaded");
         }
         
         if (isPaused) {
             // Resume from paused position
             resumePlayback();
+            armLatencyProbe("Resume", commandNanos);
             LOGGER.info("Resuming playback from: " + pausedPosition + "ms");
         } else if (isStopped) {
             // Start new playback
             startPlayback(0);
+            armLatencyProbe("Play", commandNanos);
             LOGGER.info("Starting new playback");
         }
     }
@@ -100,20 +204,17 @@ public class AudioPlayer {
      * Pauses the current playback.
      */
     public void pause() {
-        if (player != null && !isPaused && !isStopped) {
+        Session current = session;
+        if (current != null && !isPaused && !isStopped) {
+            long commandNanos = System.nanoTime();
             isPaused = true;
-            pausedPosition = currentPosition;
-            player.close();
+            latencyProbe.set(null);
             
-            // Stop the player thread
-            if (playerThread != null) {
-                playerThread.interrupt();
-                try {
-                    playerThread.join(1000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }
+            // Halt the line, buffered samples stay queued for resume
+            current.output.pause();
+            recordLatency("Pause", System.nanoTime() - commandNanos);
+            clock.update(current.output.getFramePosition() - current.clockBase);
+            pausedPosition = clock.getPositionMillis();
             
             LOGGER.info("Playback paused at: " + pausedPosition + "ms");
         }
@@ -123,28 +224,361 @@ public class AudioPlayer {
      * Stops the current playback and resets to the beginning.
      */
     public void stop() {
-        if (player != null) {
-            player.close();
-            isStopped = true;
-            isPaused = false;
-            pausedPosition = 0;
-            currentPosition = 0;
+        Session current = session;
+        boolean wasPaused = isPaused;
+        session = null;
+        isStopped = true;
+        isPaused = false;
+        pausedPosition = 0;
+        clock.setPosition(0);
+        
+        if (current != null) {
+            current.active = false;
             
-            // Stop the player thread
-            if (playerThread != null) {
-                playerThread.interrupt();
-                try {
-                    playerThread.join(1000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+            // Release a thread waiting while paused or blocked writing to the stopped line.
+            // The workers notice the inactive session and move on by themselves; the output
+            // thread discards what the line still holds, so the line stays open for the next session.
+            synchronized (pauseLock) {
+                pauseLock.notifyAll();
+            }
+            if (wasPaused) {
+                current.output.flush();
             }
             
             LOGGER.info("Playback stopped");
         }
+    }
+    
+    /**
+     * Stops playback, closes the loaded track and ends the decoder and
+     * output threads. The player can be used again afterwards; its threads
+     * are started anew on the next play.
+     */
+    public void release() {
+        stop();
+        Track previous = track;
+        track = null;
+        if (previous != null) {
+            previous.close();
+        }
+        nextFile = null;
+        PreparedTrack prepared = preparedNext.getAndSet(null);
+        if (prepared != null) {
+            prepared.close();
+        }
+        
+        synchronized (this) {
+            if (decoderWorker != null) {
+                decoderWorker.interrupt();
+                outputWorker.interrupt();
+                decoderWorker = null;
+                outputWorker = null;
+            }
+            if (sink != null) {
+                sink.close();
+            }
+        }
+        LOGGER.fine("Audio player released");
+    }
+    
+    /**
+     * Queues the file to continue with when the current track ends.
+     * The file is opened and its first samples decoded in the background,
+     * then spliced onto the current track without a gap, resampled if its
+     * sample rate differs. Files whose channel count differs from the
+     * playing track are not spliced and end playback as usual.
+     * 
+     * @param file The next MP3 file, or null to end after the current track
+     */
+    public void setNextFile(File file) {
+        if (Objects.equals(file, nextFile)) {
+            return;
+        }
+        nextFile = file;
+        
+        PreparedTrack stale = preparedNext.getAndSet(null);
+        if (stale != null) {
+            stale.close();
+        }
+        prepareNext(file);
+    }
+    
+    /**
+     * Gets the file that is currently audible.
+     * Changes by itself when playback continues into the queued next file.
+     * 
+     * @return The current file, or null if none is loaded
+     */
+    public File getCurrentFile() {
+        Track current = track;
+        return current != null ? current.file : null;
+    }
+    
+    /**
+     * Loops playback between two positions of the current track. The end of
+     * the loop is joined to its start sample-accurately, and once the loop
+     * has played through it is replayed from the PCM cache.
+     * MP3 loops need the frame index, so they fail right after a file is loaded.
+     * 
+     * @param startMillis Loop start, moved back to the start of its frame
+     * @param endMillis Loop end
+     * @return true if the loop was set
+     */
+    public boolean setLoop(int startMillis, int endMillis) {
+        Track current = track;
+        if (current == null || endMillis - startMillis < MIN_LOOP_MS) {
+            return false;
+        }
+        
+        int start = Math.max(0, startMillis);
+        if (current.isMp3()) {
+            Mp3FrameIndex index = current.frameIndex;
+            if (index == null) {
+                return false;
+            }
+            start = index.getFrameTimeMillis(index.frameForMillis(start));
+        }
+        int end = Math.min(endMillis, current.duration);
+        current.loopStart = start;
+        current.loopEnd = end;
+        LOGGER.info("Looping " + start + "ms - " + end + "ms");
         
-        // Close file streams
-        closeStreams();
+        // The decoder runs ahead of the line and may already be past the end.
+        // An MP3 decoder opened before the index was built does not know its
+        // position and cannot find the loop end, so it is replaced by one that does.
+        Session playing = session;
+        if (playing != null) {
+            int position = getCurrentPosition();
+            if (position >= end) {
+                seekTo(start);
+            } else if (position + bufferAheadMs + LINE_AHEAD_MS >= end || !playing.positionKnown) {
+                seekTo(position);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Stops looping. Playback continues past the loop end.
+     */
+    public void clearLoop() {
+        Track current = track;
+        if (current != null) {
+            current.loopEnd = -1;
+            current.loopStart = -1;
+        }
+    }
+    
+    /**
+     * Checks whether an A-B loop is set on the current track.
+     * 
+     * @return true if looping
+     */
+    public boolean isLooping() {
+        Track current = track;
+        return current != null && current.loopEnd >= 0;
+    }
+    
+    /**
+     * Sets how much memory the cache of decoded audio may use.
+     * 
+     * @param bytes Budget in bytes, 0 disables the cache
+     */
+    public void setPcmCacheBudget(long bytes) {
+        pcmCache.setBudget(bytes);
+    }
+    
+    /**
+     * Gets the cache of decoded audio, for statistics.
+     * 
+     * @return The PCM cache
+     */
+    public PcmBlockCache getPcmCache() {
+        return pcmCache;
+    }
+    
+    /**
+     * Sets how much decoded audio is kept ahead of the output.
+     * Takes effect on the next playback start or seek.
+     * 
+     * @param millis Decode-ahead depth in milliseconds
+     */
+    public void setBufferAheadMillis(int millis) {
+        this.bufferAheadMs = Math.max(20, millis);
+        LOGGER.info("Decode-ahead set to: " + this.bufferAheadMs + "ms");
+    }
+    
+    /**
+     * Sets the size of the output line's buffer. Smaller buffers react
+     * faster to pause and volume changes, larger ones survive longer stalls.
+     * Takes effect on the next playback start or seek.
+     * 
+     * @param millis Line buffer length in milliseconds, 0 for the line's default
+     */
+    public void setLineBufferMillis(int millis) {
+        this.lineBufferMs = Math.max(0, millis);
+        LOGGER.info("Line buffer set to: " + (this.lineBufferMs > 0 ? this.lineBufferMs + "ms" : "default"));
+    }
+    
+    /**
+     * Sets the crossfade into the next track. The tail of the current track
+     * is mixed under the start of the next one with an equal-power curve;
+     * the next track counts as playing from the moment the fade starts.
+     * Tracks at different sample rates, and tracks with an A-B loop, still
+     * change over gaplessly.
+     * 
+     * @param millis Fade length in milliseconds, 0 to 12000, 0 for gapless
+     */
+    public void setCrossfadeMillis(int millis) {
+        this.crossfadeMs = Math.max(0, Math.min(MAX_CROSSFADE_MS, millis));
+        LOGGER.info("Crossfade set to: " + this.crossfadeMs + "ms");
+    }
+    
+    /**
+     * Gets the crossfade into the next track.
+     * 
+     * @return Fade length in milliseconds, 0 for gapless
+     */
+    public int getCrossfadeMillis() {
+        return crossfadeMs;
+    }
+    
+    /**
+     * Sets the playback speed. Audio is time-stretched so the pitch stays
+     * the same. The change is heard once the audio already decoded ahead
+     * has played, and the position then advances at the new speed.
+     * 
+     * @param speed Speed from 0.5 to 2.0, 1.0 is normal
+     */
+    public void setPlaybackSpeed(double speed) {
+        this.playbackSpeed = Math.max(WsolaTimeStretcher.MIN_SPEED, Math.min(WsolaTimeStretcher.MAX_SPEED, speed));
+        LOGGER.info("Playback speed set to: " + this.playbackSpeed + "x");
+    }
+    
+    /**
+     * Gets the playback speed.
+     * 
+     * @return Speed, 1.0 is normal
+     */
+    public double getPlaybackSpeed() {
+        return playbackSpeed;
+    }
+    
+    /**
+     * Fixes the sample rate of the output line. Tracks at other rates are
+     * resampled, so the line can run at the device's native rate. The line
+     * is kept open between sessions and only reopened when its rate or
+     * channel count changes, so a fixed rate keeps one line open across
+     * seeks and tracks of mixed rates.
+     * Takes effect on the next playback start or seek.
+     * 
+     * @param hz Output sample rate in Hz, 0 to use each track's own rate
+     */
+    public void setOutputSampleRate(int hz) {
+        this.outputSampleRate = Math.max(0, hz);
+        LOGGER.info("Output sample rate set to: " + (this.outputSampleRate > 0 ? this.outputSampleRate + "Hz" : "track rate"));
+    }
+    
+    /**
+     * Sets where sessions send their audio. With a sink that is not a
+     * sound card the whole pipeline runs as fast as the CPU allows, and
+     * the clock follows the frames the sink has taken. Sinks that are not
+     * sound cards are closed at the end of every session.
+     * Takes effect on the next playback start or seek, which closes the
+     * previous sink.
+     * 
+     * @param factory Creates the sink shared by the following sessions
+     */
+    public synchronized void setSinkFactory(Supplier<? extends AudioSink> factory) {
+        this.sinkFactory = Objects.requireNonNull(factory);
+        this.sink = null;
+    }
+    
+    /**
+     * Gets the fixed output sample rate.
+     * 
+     * @return Output sample rate in Hz, 0 if the line follows the track
+     */
+    public int getOutputSampleRate() {
+        return outputSampleRate;
+    }
+    
+    /**
+     * Gets the requested size of the output line's buffer.
+     * 
+     * @return Line buffer length in milliseconds, 0 for the line's default
+     */
+    public int getLineBufferMillis() {
+        return lineBufferMs;
+    }
+    
+    /**
+     * Switches between the default output configuration and a low-latency
+     * one with a small line buffer and a shallow decode-ahead, for cueing.
+     * The low-latency mode reacts within a few tens of milliseconds but
+     * drops out sooner when the system is busy.
+     * Takes effect on the next playback start or seek.
+     * 
+     * @param enabled true for low latency, false for the defaults
+     */
+    public void setLowLatency(boolean enabled) {
+        if (enabled) {
+            setLineBufferMillis(LOW_LATENCY_LINE_MS);
+            setBufferAheadMillis(LOW_LATENCY_AHEAD_MS);
+        } else {
+            setLineBufferMillis(0);
+            setBufferAheadMillis(DEFAULT_BUFFER_AHEAD_MS);
+        }
+    }
+    
+    /**
+     * Checks whether the low-latency output configuration is selected.
+     * 
+     * @return true if the line buffer and decode-ahead are the low-latency ones
+     */
+    public boolean isLowLatency() {
+        return lineBufferMs == LOW_LATENCY_LINE_MS && bufferAheadMs == LOW_LATENCY_AHEAD_MS;
+    }
+    
+    /**
+     * Gets the latency of the last play, resume, seek or pause command:
+     * the time from the call until the first sample it produced was played
+     * by the line, or until the line stopped for a pause.
+     * 
+     * @return Latency in milliseconds, or -1 if nothing was measured yet
+     */
+    public double getLastLatencyMillis() {
+        long nanos = lastLatencyNanos;
+        return nanos < 0 ? -1 : nanos / 1_000_000.0;
+    }
+    
+    /**
+     * Gets the decode-ahead depth.
+     * 
+     * @return Decode-ahead depth in milliseconds
+     */
+    public int getBufferAheadMillis() {
+        return bufferAheadMs;
+    }
+    
+    /**
+     * Gets the number of times the output ran out of decoded audio while
+     * playing, which is heard as a dropout.
+     * 
+     * @return Underrun count since the player was created
+     */
+    public long getUnderrunCount() {
+        return underrunCount.get();
+    }
+    
+    /**
+     * Gets the error that ended the last session before the end of its
+     * track, such as a corrupt frame the decoder could not read.
+     * 
+     * @return The failure, or null if the last session did not fail
+     */
+    public Exception getPlaybackError() {
+        return playbackError;
     }
     
     /**
@@ -154,19 +588,47 @@ public class AudioPlayer {
      */
     public void setVolume(int volume) {
         this.volume = Math.max(0, Math.min(100, volume));
-        LOGGER.info("Volume set to: " + this.volume + "%");
-        // Note: JLayer doesn't have built-in volume control
-        // For a real application, you would need to implement volume control
-        // using audio processing or an alternative library
+        gainStage.setVolume(this.volume);
+        LOGGER.fine("Volume set to: " + this.volume + "%");
+    }
+    
+    /**
+     * Gets the playback volume.
+     * 
+     * @return Volume level from 0 (mute) to 100 (max)
+     */
+    public int getVolume() {
+        return volume;
+    }
+    
+    /**
+     * Gets the equalizer applied to the output. Its settings can be changed
+     * from any thread and take effect with the next output chunk.
+     * 
+     * @return The player's equalizer
+     */
+    public ParametricEqualizer getEqualizer() {
+        return equalizer;
     }
     
     /**
      * Gets the current playback position in milliseconds.
+     * The position is that of the sample the output line is playing.
      * 
      * @return Current position in milliseconds
      */
     public int getCurrentPosition() {
-        return currentPosition;
+        return clock.getPositionMillis();
+    }
+    
+    /**
+     * Gets the sample-accurate playback clock.
+     * Progress displays and end-of-track detection should poll this.
+     * 
+     * @return The playback clock
+     */
+    public PlaybackClock getClock() {
+        return clock;
     }
     
     /**
@@ -175,7 +637,8 @@ public class AudioPlayer {
      * @return Total duration in milliseconds
      */
     public int getTotalDuration() {
-        return totalDuration;
+        Track current = track;
+        return current != null ? current.duration : 0;
     }
     
     /**
@@ -198,17 +661,27 @@ public class AudioPlayer {
     
     /**
      * Seeks to a specific position in the audio file.
-     * Note: This is an approximation as MP3 files don't support precise seeking.
+     * MP3 seeking is frame-accurate once the frame index is available and
+     * falls back to a bitrate estimate until then. FLAC seeking is
+     * sample-accurate and uses the seek table or a search on frame headers.
      * 
      * @param position Position in milliseconds to seek to
      */
     public void seekTo(int position) {
-        if (currentFile == null) {
+        long commandNanos = System.nanoTime();
+        Track current = track;
+        if (current == null) {
             return;
         }
         
         // Bound the position
-        position = Math.max(0, Math.min(position, totalDuration));
+        position = Math.max(0, Math.min(position, current.duration));
+        
+        // Snap to the start of the frame that will actually be played
+        Mp3FrameIndex index = current.frameIndex;
+        if (index != null) {
+            position = index.getFrameTimeMillis(index.frameForMillis(position));
+        }
         
         // Stop current playback
         boolean wasPlaying = !isPaused && !isStopped;
@@ -216,10 +689,11 @@ public class AudioPlayer {
         
         try {
             // Start playback from the specified position
-            currentPosition = position;
+            clock.setPosition(position);
             
             if (wasPlaying) {
                 startPlayback(position);
+                armLatencyProbe("Seek", commandNanos);
                 LOGGER.info("Seeking to position: " + position + "ms");
             } else {
                 pausedPosition = position;
@@ -232,120 +706,1079 @@ public class AudioPlayer {
         }
     }
     
+    /**
+     * Gets the sink shared by all sessions, creating it on first use.
+     * 
+     * @return The player's sink
+     */
+    private synchronized AudioSink getSink() {
+        if (sink == null) {
+            sink = sinkFactory.get();
+        }
+        return sink;
+    }
+    
     /**
      * Starts playback from the specified position.
      * 
-     * @param startPosition Position in bytes to start from
+     * @param startPosition Position in milliseconds to start from
      */
     private void startPlayback(int startPosition) {
-        try {
-            // Close any existing streams
-            closeStreams();
-            
-            // Open new streams
-            fileInputStream = new FileInputStream(currentFile);
-            bufferedInputStream = new BufferedInputStream(fileInputStream);
-            
-            // Skip to the position if needed
-            if (startPosition > 0) {
-                // Convert time position to bytes (approximation)
-                long skipBytes = (long) (startPosition / 1000.0 * 128000 / 8); // Assuming 128kbps
-                bufferedInputStream.skip(skipBytes);
-            }
-            
-            // Update state
-            isPaused = false;
-            isStopped = false;
-            currentPosition = startPosition;
-            
-            // Create a new player
-            player = new AdvancedPlayer(bufferedInputStream);
-            player.setPlayBackListener(new PlaybackListener() {
-                @Override
-                public void playbackFinished(PlaybackEvent evt) {
-                    // Playback has finished naturally
-                    if (!isPaused) {
-                        isStopped = true;
-                        isPaused = false;
-                        currentPosition = totalDuration;
-                        LOGGER.info("Playback finished naturally");
-                    }
-                }
-            });
-            
-            // Start the player in a separate thread
-            playerThread = new Thread(() -> {
-                try {
-                    player.play();
-                } catch (Exception e) {
-                    LOGGER.log(Level.WARNING, "Playback error", e);
-                } finally {
-                    if (!isPaused) {
-                        isStopped = true;
-                    }
-                }
-            });
-            
-            playerThread.setDaemon(true);
-            playerThread.start();
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Failed to start playback", e);
-            isStopped = true;
-            isPaused = false;
-        }
+        Session newSession = new Session(track, startPosition, getSink());
+        
+        // Update state
+        isPaused = false;
+        isStopped = false;
+        playbackError = null;
+        clock.setPosition(startPosition);
+        session = newSession;
+        
+        // The decoder thread starts the output once audio is buffered
+        ensureWorkers();
+        decodeQueue.offer(newSession);
     }
     
     /**
-     * Resumes playback from the paused position.
+     * Starts the decoder and output threads on first use.
      */
-    private void resumePlayback() {
-        if (isPaused) {
-            startPlayback(pausedPosition);
+    private synchronized void ensureWorkers() {
+        if (decoderWorker == null) {
+            decoderWorker = new Thread(this::runDecoderWorker, "AudioPlayer-decoder");
+            decoderWorker.setDaemon(true);
+            decoderWorker.start();
+            
+            outputWorker = new Thread(this::runOutputWorker, "AudioPlayer-output");
+            outputWorker.setDaemon(true);
+            outputWorker.start();
         }
     }
     
     /**
-     * Closes the file streams.
+     * Decoder thread loop. Sessions queued while the previous one was winding
+     * down, such as a burst of seeks while scrubbing, are coalesced so only
+     * the newest is decoded.
      */
-    private void closeStreams() {
-        try {
-            if (bufferedInputStream != null) {
-                bufferedInputStream.close();
-                bufferedInputStream = null;
+    private void runDecoderWorker() {
+        while (true) {
+            Session next;
+            try {
+                next = decodeQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            
+            Session newer;
+            while ((newer = decodeQueue.poll()) != null) {
+                next = newer;
             }
-            if (fileInputStream != null) {
-                fileInputStream.close();
-                fileInputStream = null;
+            
+            if (next.active) {
+                runDecoder(next);
             }
-        } catch (IOException e) {
-            LOGGER.log(Level.WARNING, "Error closing streams", e);
         }
     }
     
     /**
-     * Calculates the approximate duration of the MP3 file.
-     * This is a simple approximation based on file size and bitrate.
-     * 
-     * @param file The MP3 file
-     * @return Approximate duration in milliseconds
+     * Output thread loop. Runs one session at a time, so the gain stage and
+     * clock only ever have a single writer.
      */
-    private int calculateDuration(File file) {
-        // Assume a default bitrate of 128 kbps for MP3 files
-        long fileSize = file.length();
-        
-        // Calculate duration in milliseconds (fileSize * 8 / bitrate)
-        return (int) (fileSize * 8 / 128000 * 1000);
+    private void runOutputWorker() {
+        while (true) {
+            try {
+                runOutput(outputQueue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
     }
     
     /**
-     * Updates the current position based on elapsed time.
-     * This is called periodically by the progress updater.
+     * Decodes frames into the session's ring buffer until the stream ends or
+     * the session is stopped. Blocks only when the buffer is full.
+     * At the end of a track the prepared next track, if any, is spliced on,
+     * and at the end of an A-B loop decoding continues from the loop start.
+     * With a crossfade set, the next track is spliced on early and the end
+     * of the current one is mixed under it. Away from normal speed the
+     * audio is time-stretched, and audio at a rate other than the line's
+     * is resampled on the way. The stretcher is flushed at every splice so
+     * the clock moves to the splice's position exactly when it is heard.
      * 
-     * @param elapsedTime Elapsed time in milliseconds
+     * @param s The playback session
      */
-    public void updatePosition(int elapsedTime) {
-        if (!isPaused && !isStopped) {
-            this.currentPosition = elapsedTime;
+    private void runDecoder(Session s) {
+        Track decoding = s.track;
+        TrackDecoder decoder = null;
+        PolyphaseResampler resampler = null;
+        WsolaTimeStretcher stretcher = null;
+        CrossfadeMixer mixer = new CrossfadeMixer();
+        int prefill = 0;
+        
+        try {
+            decoder = openDecoder(decoding, s.startPosition);
+            while (s.active) {
+                if (!decoder.next()) {
+                    PreparedTrack spliced = takeNextTrack(s, decoder);
+                    if (spliced == null) {
+                        break;
+                    }
+                    
+                    if (stretcher != null) {
+                        flushStretcher(s, stretcher, resampler);
+                    }
+                    
+                    // A different rate needs another filter, play out the old one first
+                    int nextRate = spliced.decoder.getSampleRate();
+                    int inputRate = resampler != null ? resampler.getInputRate() : s.outputRate;
+                    if (nextRate != inputRate) {
+                        if (resampler != null) {
+                            flushResampler(s, resampler);
+                        }
+                        resampler = nextRate != s.outputRate
+                                ? new PolyphaseResampler(nextRate, s.outputRate, spliced.decoder.getChannels())
+                                : null;
+                    }
+                    
+                    offerSplice(s, spliced.track, 0, true);
+                    decoder.close();
+                    decoder = spliced.decoder;
+                    decoding = spliced.track;
+                    continue;
+                }
+                
+                // The stream format is known after the first decoded frame
+                if (s.ring == null) {
+                    int channels = decoder.getChannels();
+                    int rate = outputSampleRate > 0 ? outputSampleRate : decoder.getSampleRate();
+                    if (rate != decoder.getSampleRate()) {
+                        resampler = new PolyphaseResampler(decoder.getSampleRate(), rate, channels);
+                    }
+                    s.ring = new PcmRingBuffer((int) ((long) rate * channels * bufferAheadMs / 1000), channels);
+                    s.outputRate = rate;
+                    s.outputChannels = channels;
+                    s.speed = playbackSpeed;
+                    clock.start(s.startPosition, rate, s.speed);
+                    prefill = s.ring.capacity() / 2;
+                }
+                
+                // A new speed starts at a splice, so the clock changes pace when it is heard
+                double speed = playbackSpeed;
+                if (speed != s.speed) {
+                    if (stretcher != null) {
+                        flushStretcher(s, stretcher, resampler);
+                    }
+                    int position = positionAt(s, decoder);
+                    s.speed = speed;
+                    offerSplice(s, decoding, position, false);
+                }
+                
+                // Cut the chunk at the loop end and continue from the loop start
+                int length = decoder.getLength();
+                int loopEnd = decoding.loopEnd;
+                boolean looping = false;
+                boolean positionKnown = decoder.getPosition() >= 0;
+                if (positionKnown != s.positionKnown) {
+                    s.positionKnown = positionKnown;
+                }
+                if (loopEnd >= 0 && positionKnown) {
+                    int channels = decoder.getChannels();
+                    long endSample = (long) loopEnd * decoder.getSampleRate() / 1000;
+                    if (decoder.getPosition() + length / channels > endSample) {
+                        length = (int) Math.max(0, endSample - decoder.getPosition()) * channels;
+                        looping = true;
+                    }
+                }
+                
+                // Near the end, continue with the next track and mix this chunk in under it
+                if (!looping && !mixer.isActive()) {
+                    PreparedTrack faded = startCrossfade(s, decoding, decoder, mixer);
+                    if (faded != null) {
+                        if (stretcher != null) {
+                            flushStretcher(s, stretcher, resampler);
+                        }
+                        offerSplice(s, faded.track, 0, true);
+                        decoder = faded.decoder;
+                        decoding = faded.track;
+                        continue;
+                    }
+                }
+                
+                short[] samples = decoder.getBuffer();
+                int offset = decoder.getOffset();
+                if (mixer.isActive()) {
+                    length = mixer.mix(samples, offset, length);
+                    samples = mixer.getOutput();
+                    offset = 0;
+                }
+                if (s.speed != 1.0) {
+                    if (stretcher == null || stretcher.getSampleRate() != decoder.getSampleRate()) {
+                        stretcher = new WsolaTimeStretcher(decoder.getSampleRate(), decoder.getChannels());
+                    }
+                    stretcher.setSpeed(s.speed);
+                    length = stretcher.process(samples, offset, length);
+                    samples = stretcher.getOutput();
+                    offset = 0;
+                }
+                writeOut(s, resampler, samples, offset, length);
+                
+                if (looping && s.active) {
+                    int loopStart = decoding.loopStart;
+                    if (stretcher != null) {
+                        flushStretcher(s, stretcher, resampler);
+                    }
+                    offerSplice(s, decoding, loopStart, false);
+                    decoder.close();
+                    decoder = openDecoder(decoding, loopStart);
+                }
+                
+                if (!s.outputStarted && s.ring.available() >= prefill) {
+                    startOutput(s);
+                }
+            }
+        } catch (Exception e) {
+            if (s.active) {
+                s.error = e;
+                LOGGER.log(Level.WARNING, "Playback error", e);
+            }
+        } finally {
+            if (decoder != null) {
+                decoder.close();
+            }
+            mixer.stop();
+            if (s.ring != null) {
+                if (stretcher != null && s.active) {
+                    flushStretcher(s, stretcher, resampler);
+                }
+                if (resampler != null && s.active) {
+                    flushResampler(s, resampler);
+                }
+                s.ring.markEndOfStream();
+                if (!s.outputStarted && s.active) {
+                    startOutput(s);
+                }
+            }
+            if (!s.outputStarted) {
+                // Nothing was decoded
+                abandonSplices(s.splices);
+                finishSession(s, false);
+            }
+        }
+    }
+    
+    /**
+     * Hands the prepared next track to the decoder thread. The caller
+     * records the ring position where its first sample will be.
+     * 
+     * @param s The playback session
+     * @param current The decoder of the track that just ended
+     * @return The next track, or null if playback should end
+     */
+    private PreparedTrack takeNextTrack(Session s, TrackDecoder current) {
+        if (s.ring == null || !s.active) {
+            return null;
+        }
+        
+        PreparedTrack next = preparedNext.getAndSet(null);
+        if (next == null) {
+            return null;
+        }
+        if (!next.track.file.equals(nextFile)) {
+            LOGGER.info("Not splicing " + next.track.file.getName() + ", the queued file has changed");
+            next.close();
+            return null;
+        }
+        if (next.decoder.getChannels() != current.getChannels()) {
+            LOGGER.info("Not splicing " + next.track.file.getName() + ", channels differ from the current track");
+            next.close();
+            return null;
+        }
+        return next;
+    }
+    
+    /**
+     * Starts the crossfade into the prepared next track once the current
+     * track is within the fade length of its end. The current decoder is
+     * handed to the mixer, starting with the chunk it just decoded; the
+     * caller splices the next track in.
+     * 
+     * @param s The playback session
+     * @param current The track being decoded
+     * @param decoder Its decoder
+     * @param mixer The session's mixer
+     * @return The next track, or null if no fade starts here
+     */
+    private PreparedTrack startCrossfade(Session s, Track current, TrackDecoder decoder, CrossfadeMixer mixer) {
+        int fadeMs = crossfadeMs;
+        if (fadeMs == 0 || current.duration <= 0 || current.loopEnd >= 0 || decoder.getPosition() < 0) {
+            return null;
+        }
+        
+        int rate = decoder.getSampleRate();
+        long endFrame = (long) current.duration * rate / 1000;
+        long remaining = endFrame - decoder.getPosition();
+        if (remaining > (long) fadeMs * rate / 1000 || remaining <= 0) {
+            return null;
+        }
+        
+        // Both tracks are mixed before resampling, so they need the same rate
+        PreparedTrack candidate = preparedNext.get();
+        if (candidate == null || candidate.decoder.getSampleRate() != rate) {
+            return null;
+        }
+        PreparedTrack next = takeNextTrack(s, decoder);
+        if (next == null) {
+            return null;
+        }
+        if (next.decoder.getSampleRate() != rate) {
+            // Replaced in the meantime, leave it for a gapless transition
+            if (!preparedNext.compareAndSet(null, next)) {
+                next.close();
+            }
+            return null;
+        }
+        
+        mixer.start(decoder, remaining);
+        LOGGER.info("Crossfading into " + next.track.file.getName() + " over " + remaining * 1000 / rate + "ms");
+        return next;
+    }
+    
+    /**
+     * Opens a queued file and decodes its head in the background.
+     * The result is dropped if another file was queued in the meantime.
+     * 
+     * @param file The file to prepare, may be null
+     */
+    private void prepareNext(File file) {
+        if (file == null) {
+            return;
+        }
+        
+        PREFETCH.execute(() -> {
+            if (!file.equals(nextFile)) {
+                return;
+            }
+            
+            PreparedTrack prepared;
+            try {
+                Track next = openTrack(file);
+                
+                // Wait for the index here so the track is decoded frame by frame through the cache
+                if (next.isMp3()) {
+                    try {
+                        next.frameIndex = Mp3FrameIndex.load(file).join();
+                        next.duration = next.frameIndex.getDurationMillis();
+                    } catch (CompletionException e) {
+                        LOGGER.log(Level.FINE, "Preparing " + file.getName() + " without a frame index", e);
+                    }
+                }
+                try {
+                    prepared = new PreparedTrack(next, openDecoder(next, 0));
+                } catch (Exception e) {
+                    next.close();
+                    throw e;
+                }
+                try {
+                    prepared.decoder.preroll(PREROLL_MS);
+                } catch (Exception e) {
+                    prepared.close();
+                    throw e;
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Could not prepare next track " + file.getName(), e);
+                return;
+            }
+            
+            if (file.equals(nextFile)) {
+                PreparedTrack stale = preparedNext.getAndSet(prepared);
+                if (stale != null) {
+                    stale.close();
+                }
+                LOGGER.fine("Next track ready: " + file.getName());
+            } else {
+                prepared.close();
+            }
+        });
+    }
+    
+    /**
+     * Writes audio to the ring buffer, through the resampler if there is one.
+     */
+    private void writeOut(Session s, PolyphaseResampler resampler, short[] samples, int offset, int length) {
+        if (resampler != null) {
+            int count = resampler.process(samples, offset, length);
+            writeToRing(s, resampler.getOutput(), 0, count);
+        } else {
+            writeToRing(s, samples, offset, length);
+        }
+    }
+    
+    /**
+     * Writes out the input the stretcher still holds, through the resampler.
+     */
+    private void flushStretcher(Session s, WsolaTimeStretcher stretcher, PolyphaseResampler resampler) {
+        int count = stretcher.flush();
+        writeOut(s, resampler, stretcher.getOutput(), 0, count);
+    }
+    
+    /**
+     * Writes out the samples the resampler's filter still holds.
+     */
+    private void flushResampler(Session s, PolyphaseResampler resampler) {
+        int count = resampler.flush();
+        writeToRing(s, resampler.getOutput(), 0, count);
+    }
+    
+    /**
+     * Queues a splice at the current end of the ring buffer, at the
+     * session's current speed.
+     */
+    private static void offerSplice(Session s, Track track, int startMillis, boolean entersTrack) {
+        long ringSample = s.ring.getWriteSequence();
+        s.segmentSample = ringSample;
+        s.segmentMillis = startMillis;
+        s.splices.offer(new Splice(ringSample, track, startMillis, entersTrack, s.speed));
+    }
+    
+    /**
+     * Gets the track position of the next sample the decoder thread writes.
+     * Decoders that do not know their position are followed by counting
+     * the audio written since the last splice.
+     */
+    private static int positionAt(Session s, TrackDecoder decoder) {
+        if (decoder.getPosition() >= 0) {
+            return (int) (decoder.getPosition() * 1000 / decoder.getSampleRate());
+        }
+        long frames = (s.ring.getWriteSequence() - s.segmentSample) / decoder.getChannels();
+        return s.segmentMillis + (int) (frames * 1000 * s.speed / s.outputRate);
+    }
+    
+    /**
+     * Copies a decoded frame into the ring buffer, waiting for space as needed.
+     */
+    private void writeToRing(Session s, short[] samples, int offset, int length) {
+        int written = 0;
+        while (written < length && s.active) {
+            int count = s.ring.write(samples, offset + written, length - written);
+            if (count == 0) {
+                LockSupport.parkNanos(RING_WAIT_NANOS);
+            }
+            written += count;
+        }
+    }
+    
+    /**
+     * Hands a session to the thread that moves decoded audio to the line.
+     */
+    private void startOutput(Session s) {
+        s.outputStarted = true;
+        outputQueue.offer(s);
+    }
+    
+    /**
+     * Prepares the sink for a session on the output thread, so sessions
+     * never overlap on it. An open sink in the session's format is flushed
+     * and reused; otherwise it is opened, closing the previous sink if the
+     * factory has changed.
+     * 
+     * @param s The playback session
+     * @return true if the sink is ready, false if it could not be opened
+     */
+    private boolean openOutput(Session s) {
+        AudioSink out = s.output;
+        if (openSink != null && openSink != out) {
+            openSink.close();
+            openSink = null;
+        }
+        
+        AudioFormat format = out.getFormat();
+        int bufferMs = lineBufferMs;
+        if (out == openSink && out.isOpen() && format != null
+                && (int) format.getSampleRate() == s.outputRate
+                && format.getChannels() == s.outputChannels
+                && bufferMs == openSinkBufferMs) {
+            out.flush();
+            if (!isPaused) {
+                out.resume();
+            }
+            return true;
+        }
+        
+        try {
+            out.open(s.outputRate, s.outputChannels, bufferMs);
+            openSink = out;
+            openSinkBufferMs = bufferMs;
+            if (isPaused) {
+                out.pause();
+            }
+            return true;
+        } catch (Exception e) {
+            openSink = null;
+            s.error = e;
+            LOGGER.log(Level.WARNING, "Cannot open audio output", e);
+            return false;
+        }
+    }
+    
+    /**
+     * Drains the ring buffer into the output line. While paused the thread
+     * waits on the pause lock; the line keeps its buffered samples.
+     * Reads stop exactly at a splice so the line frame where the spliced
+     * audio starts is known, and the clock moves there when it is played.
+     * 
+     * @param s The playback session
+     */
+    private void runOutput(Session s) {
+        if (!s.active || !openOutput(s)) {
+            // Stopped before it was heard, or the line could not be opened
+            abandonSplices(s.splices);
+            finishSession(s, false);
+            s.active = false;
+            return;
+        }
+        int channels = s.output.getFormat().getChannels();
+        
+        // Keep chunks well below a small line buffer so it never runs empty between writes
+        int chunkFrames = Math.max(1, Math.min(OUTPUT_CHUNK_FRAMES, s.output.getBufferFrames() / 2));
+        short[] chunk = new short[chunkFrames * channels];
+        int rate = (int) s.output.getFormat().getSampleRate();
+        gainStage.prepare(rate);
+        equalizer.prepare(rate, channels);
+        boolean starving = false;
+        boolean finished = false;
+        boolean failed = false;
+        
+        // Frames handed to the line, and splices written to it but not yet heard
+        long framesWritten = 0;
+        ArrayDeque<Splice> written = new ArrayDeque<>();
+        
+        try {
+            while (s.active) {
+                // Gate the output while paused
+                synchronized (pauseLock) {
+                    while (isPaused && s.active) {
+                        pauseLock.wait();
+                    }
+                }
+                
+                // Never read across a splice in one chunk
+                int limit = chunk.length;
+                Splice splice = s.splices.peek();
+                while (splice != null && s.ring.getReadSequence() >= splice.ringSample) {
+                    splice.lineFrame = framesWritten;
+                    written.add(s.splices.poll());
+                    splice = s.splices.peek();
+                }
+                if (splice != null) {
+                    limit = (int) Math.min(limit, splice.ringSample - s.ring.getReadSequence());
+                }
+                
+                int count = s.ring.read(chunk, 0, limit);
+                if (count == 0) {
+                    if (s.ring.isDrained()) {
+                        finished = true;
+                        break;
+                    }
+                    
+                    // The decoder fell behind, count each dropout once; offline it is only waiting
+                    if (!starving && s.output.isRealtime()) {
+                        starving = true;
+                        underrunCount.incrementAndGet();
+                        LOGGER.warning("Audio output underrun (" + underrunCount.get() + " total)");
+                    }
+                    LockSupport.parkNanos(RING_WAIT_NANOS);
+                    continue;
+                }
+                
+                starving = false;
+                equalizer.process(chunk, 0, count);
+                gainStage.process(chunk, 0, count, channels);
+                s.output.write(chunk, 0, count);
+                framesWritten += count / channels;
+                if (s.active) {
+                    long played = s.output.getFramePosition();
+                    while (!written.isEmpty() && played >= written.peek().lineFrame) {
+                        enterSplice(s, written.poll(), rate);
+                    }
+                    clock.update(played - s.clockBase);
+                    
+                    LatencyProbe probe = latencyProbe.get();
+                    if (probe != null && probe.session == s && played > probe.lineFrame
+                            && latencyProbe.compareAndSet(probe, null)) {
+                        recordLatency(probe.command, System.nanoTime() - probe.startNanos);
+                    }
+                }
+            }
+            
+            if (finished && s.active) {
+                // Let the line play out what is still buffered
+                s.output.drain();
+                while (!written.isEmpty()) {
+                    enterSplice(s, written.poll(), rate);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Interrupted while paused
+        } catch (Exception e) {
+            failed = true;
+            if (s.active) {
+                LOGGER.log(Level.WARNING, "Audio output error", e);
+            }
+        } finally {
+            if (failed || !s.output.isRealtime()) {
+                // File sinks complete their output on close
+                s.output.close();
+            } else if (!finished || !s.active) {
+                // Silence what is left of a stopped session, keeping the line for the next
+                s.output.flush();
+            }
+            if (equalizer.isEnabled()) {
+                LOGGER.fine(String.format("Equalizer load: %.3f%% of a core", equalizer.getCpuLoad() * 100));
+            }
+            abandonSplices(written);
+            abandonSplices(s.splices);
+            finishSession(s, finished);
+        }
+    }
+    
+    /**
+     * Starts timing a command that ends when the current session's line
+     * plays a sample it had not played when the command was issued.
+     * 
+     * @param command Name of the command, for the log
+     * @param startNanos Time the command was issued, from System.nanoTime()
+     */
+    private void armLatencyProbe(String command, long startNanos) {
+        Session current = session;
+        if (current == null) {
+            return;
+        }
+        // A new session counts from 0 once the output thread has flushed the shared sink
+        long lineFrame = current.outputStarted && current.output.isOpen() ? current.output.getFramePosition() : 0;
+        latencyProbe.set(new LatencyProbe(command, startNanos, current, lineFrame));
+    }
+    
+    /**
+     * Stores and logs a measured command latency.
+     * 
+     * @param command Name of the command
+     * @param nanos Latency in nanoseconds
+     */
+    private void recordLatency(String command, long nanos) {
+        lastLatencyNanos = nanos;
+        LOGGER.info(String.format("%s latency: %.1fms (line buffer: %s, decode-ahead: %dms)", command,
+                nanos / 1_000_000.0, lineBufferMs > 0 ? lineBufferMs + "ms" : "default", bufferAheadMs));
+    }
+    
+    /**
+     * Applies a splice once its first sample plays. Moving into the next
+     * track counts as the completion of the previous one, so listeners
+     * advance their playlist exactly as after a normal end.
+     * 
+     * @param s The playback session
+     * @param splice The splice that became audible
+     * @param rate Output sample rate in Hz
+     */
+    private void enterSplice(Session s, Splice splice, int rate) {
+        if (session != s || !s.active) {
+            return;
+        }
+        
+        s.clockBase = splice.lineFrame;
+        Track previous = track;
+        if (splice.entersTrack) {
+            track = splice.track;
+            clock.markCompleted(previous.duration);
+            previous.close();
+            LOGGER.info("Continuing gaplessly with: " + splice.track.file.getName());
+        }
+        clock.start(splice.startMillis, rate, splice.speed);
+    }
+    
+    /**
+     * Releases splices of a session that ended before they were heard.
+     * A next track spliced in this way is prepared again.
+     * 
+     * @param splices Splices that will never become audible
+     */
+    private void abandonSplices(Queue<Splice> splices) {
+        Splice splice;
+        while ((splice = splices.poll()) != null) {
+            if (splice.entersTrack) {
+                splice.track.close();
+                prepareNext(nextFile);
+            }
+        }
+    }
+    
+    /**
+     * Marks a session as ended if it is still the current one.
+     * 
+     * @param s The session that ended
+     * @param finished true if the stream played to its end
+     */
+    private void finishSession(Session s, boolean finished) {
+        if (session == s && s.active) {
+            // Record the outcome before publishing the stop, which is what waiters see
+            playbackError = s.error;
+            if (finished) {
+                clock.markCompleted(getTotalDuration());
+                LOGGER.info("Playback finished naturally");
+            }
+            session = null;
+            isPaused = false;
+            isStopped = true;
+        }
+    }
+    
+    /**
+     * Resumes playback from the paused position.
+     * A live session continues at the exact sample where it was paused,
+     * otherwise (after a seek while paused) playback starts at the position.
+     */
+    private void resumePlayback() {
+        if (!isPaused) {
+            return;
+        }
+        
+        Session current = session;
+        if (current != null) {
+            isPaused = false;
+            current.output.resume();
+            synchronized (pauseLock) {
+                pauseLock.notifyAll();
+            }
+        } else {
+            startPlayback(pausedPosition);
+        }
+    }
+    
+    /**
+     * Opens a file and reads its header. MP3 files are mapped and their
+     * frame index is built in the background; FLAC files are mapped and
+     * seek with their metadata; WAV and AIFF files holding integer PCM are
+     * mapped and played from their data chunk; other formats are checked
+     * for a Java Sound provider and streamed when played.
+     * 
+     * @param file The audio file
+     * @return The opened track
+     * @throws Exception If the file cannot be opened or its format is not supported
+     */
+    private Track openTrack(File file) throws Exception {
+        if (isFlac(file)) {
+            FlacMetadata metadata = FlacMetadata.read(file);
+            Track opened = new Track(file, MappedAudioSource.open(file), null, metadata, null);
+            opened.duration = metadata.getDurationMillis();
+            return opened;
+        }
+        if (isPcmFile(file)) {
+            PcmFileFormat format = readPcmFormat(file);
+            if (format != null) {
+                Track opened = new Track(file, MappedAudioSource.open(file), null, null, format);
+                opened.duration = format.getDurationMillis();
+                return opened;
+            }
+        }
+        if (!isMp3(file)) {
+            JavaSoundTrackDecoder.openPcm(file).close();
+            Track opened = new Track(file, null, null, null, null);
+            opened.duration = JavaSoundTrackDecoder.readDurationMillis(file);
+            return opened;
+        }
+        
+        // Map the file once, playback and seeking reuse the mapping
+        MappedAudioSource source = MappedAudioSource.open(file);
+        
+        // Read the VBR header for an immediate duration
+        Track opened = new Track(file, source, readVbrHeader(file), null, null);
+        opened.duration = calculateDuration(opened);
+        
+        // Build the exact seek index in the background
+        loadFrameIndex(opened);
+        return opened;
+    }
+    
+    /**
+     * Starts building the frame index for a track and applies it when ready.
+     * 
+     * @param t The track being loaded
+     */
+    private void loadFrameIndex(Track t) {
+        Mp3FrameIndex.load(t.file).whenComplete((index, error) -> {
+            if (error != null) {
+                LOGGER.log(Level.WARNING, "Could not index " + t.file.getName() + ", seeking will be approximate", error);
+                return;
+            }
+            
+            t.frameIndex = index;
+            t.duration = index.getDurationMillis();
+            LOGGER.info("Frame index ready for " + t.file.getName() + ", Duration: " + t.duration + "ms");
+        });
+    }
+    
+    /**
+     * Checks whether a file is decoded with JLayer rather than Java Sound.
+     * 
+     * @param file The audio file
+     * @return true for MP3 files
+     */
+    static boolean isMp3(File file) {
+        return file.getName().toLowerCase().endsWith(".mp3");
+    }
+    
+    /**
+     * Checks whether a file is decoded by the seeking FLAC decoder.
+     * 
+     * @param file The audio file
+     * @return true for FLAC files
+     */
+    static boolean isFlac(File file) {
+        return file.getName().toLowerCase().endsWith(".flac");
+    }
+    
+    /**
+     * Checks whether a file may hold uncompressed PCM.
+     * 
+     * @param file The audio file
+     * @return true for WAV and AIFF files
+     */
+    static boolean isPcmFile(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".wav") || name.endsWith(".aiff") || name.endsWith(".aif");
+    }
+    
+    /**
+     * Reads the header of a WAV or AIFF file.
+     * 
+     * @param file The audio file
+     * @return The format, or null if the file is not integer PCM and has to
+     *         go through Java Sound
+     */
+    private PcmFileFormat readPcmFormat(File file) {
+        try {
+            return PcmFileFormat.read(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Playing " + file.getName() + " through Java Sound", e);
+            return null;
+        }
+    }
+    
+    /**
+     * Creates a decoder for a track positioned at a playback position.
+     * With the frame index an MP3 decoder is frame-accurate and uses the PCM
+     * cache; until the index is built it starts from a header estimate.
+     * 
+     * @param t The track
+     * @param position Position in milliseconds
+     * @return The positioned decoder
+     * @throws Exception If the file cannot be opened
+     */
+    private TrackDecoder openDecoder(Track t, int position) throws Exception {
+        if (t.flacMetadata != null) {
+            long sample = (long) position * t.flacMetadata.getSampleRate() / 1000;
+            return new FlacTrackDecoder(t.source, t.flacMetadata, sample);
+        }
+        if (t.pcmFormat != null) {
+            long frame = (long) position * t.pcmFormat.getSampleRate() / 1000;
+            return new PcmTrackDecoder(t.source, t.pcmFormat, frame);
+        }
+        if (!t.isMp3()) {
+            return new JavaSoundTrackDecoder(t.file, position);
+        }
+        
+        Mp3FrameIndex index = t.frameIndex;
+        if (index != null) {
+            return new Mp3TrackDecoder(t.source, t.vbrHeader, index, index.frameForMillis(position), pcmCache);
+        }
+        
+        // Delay and padding can only be trimmed when starting at the beginning
+        return new Mp3TrackDecoder(t.source, t.vbrHeader, byteOffsetFor(t, position), position <= 0 ? 0 : -1);
+    }
+    
+    /**
+     * Estimates the byte offset of a playback position before the frame
+     * index is available.
+     * 
+     * @param t The track
+     * @param position Position in milliseconds
+     * @return Byte offset from the start of the file
+     */
+    private long byteOffsetFor(Track t, int position) {
+        // Use the header's seek table
+        if (t.vbrHeader != null) {
+            return t.vbrHeader.byteOffsetFor(position);
+        }
+        
+        // No usable header, assume 128kbps
+        return (long) (position / 1000.0 * 128000 / 8);
+    }
+    
+    /**
+     * Reads the Xing/VBRI/LAME header of a file.
+     * 
+     * @param file The MP3 file
+     * @return The header, or null if the file has no readable MPEG frames
+     */
+    private Mp3VbrHeader readVbrHeader(File file) {
+        try {
+            return Mp3VbrHeader.read(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not read MP3 header of " + file.getName(), e);
+            return null;
+        }
+    }
+    
+    /**
+     * Calculates the duration of the MP3 file before the frame index is ready.
+     * Uses the frame count from the Xing/VBRI header when present, otherwise
+     * the bitrate of the first frame.
+     * 
+     * @param t The track
+     * @return Duration in milliseconds
+     */
+    private int calculateDuration(Track t) {
+        if (t.vbrHeader != null) {
+            return t.vbrHeader.getDurationMillis();
+        }
+        
+        // Assume a default bitrate of 128 kbps for MP3 files
+        long fileSize = t.file.length();
+        
+        // Calculate duration in milliseconds (fileSize * 8 / bitrate)
+        return (int) (fileSize * 8 / 128000 * 1000);
+    }
+    
+    /**
+     * A loaded file: its mapping, header, the seek index once built, and
+     * the A-B loop set on it (-1 when not looping). MP3, FLAC and PCM files
+     * are mapped; only MP3 files have a VBR header and index.
+     */
+    private static final class Track {
+        final File file;
+        final MappedAudioSource source;
+        final Mp3VbrHeader vbrHeader;
+        final FlacMetadata flacMetadata;
+        final PcmFileFormat pcmFormat;
+        volatile Mp3FrameIndex frameIndex;
+        volatile int duration;
+        volatile int loopStart = -1;
+        volatile int loopEnd = -1;
+        
+        Track(File file, MappedAudioSource source, Mp3VbrHeader vbrHeader, FlacMetadata flacMetadata,
+                PcmFileFormat pcmFormat) {
+            this.file = file;
+            this.source = source;
+            this.vbrHeader = vbrHeader;
+            this.flacMetadata = flacMetadata;
+            this.pcmFormat = pcmFormat;
+        }
+        
+        boolean isMp3() {
+            return AudioPlayer.isMp3(file);
+        }
+        
+        void close() {
+            if (source == null) {
+                return;
+            }
+            try {
+                source.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Error closing audio source", e);
+            }
+        }
+    }
+    
+    /**
+     * A queued track with its head already decoded.
+     */
+    private static final class PreparedTrack {
+        final Track track;
+        final TrackDecoder decoder;
+        
+        PreparedTrack(Track track, TrackDecoder decoder) {
+            this.track = track;
+            this.decoder = decoder;
+        }
+        
+        void close() {
+            decoder.close();
+            track.close();
+        }
+    }
+    
+    /**
+     * One run of playback from a start position: the track being decoded,
+     * the ring buffer between the decoder and output threads, and the line.
+     * Splices are queued by the decoder in ring order and taken by the output.
+     */
+    private static final class Session {
+        final Track track;
+        final int startPosition;
+        final AudioSink output;
+        volatile boolean active = true;
+        volatile boolean outputStarted = false;
+        volatile PcmRingBuffer ring;
+        volatile int outputRate;
+        volatile int outputChannels;
+        final Queue<Splice> splices = new ConcurrentLinkedQueue<>();
+        volatile long clockBase = 0;
+        
+        // Set by the decoder thread when decoding failed before the end of the stream
+        volatile Exception error;
+        
+        // Whether the decoder knows its sample position, which loops need
+        volatile boolean positionKnown = true;
+        
+        // Decoder thread only: current speed, and where the last splice put the track
+        double speed = 1.0;
+        long segmentSample = 0;
+        int segmentMillis;
+        
+        Session(Track track, int startPosition, AudioSink output) {
+            this.track = track;
+            this.startPosition = startPosition;
+            this.output = output;
+            this.segmentMillis = startPosition;
+        }
+    }
+    
+    /**
+     * A command being timed until the line plays past a frame.
+     */
+    private static final class LatencyProbe {
+        final String command;
+        final long startNanos;
+        final Session session;
+        final long lineFrame;
+        
+        LatencyProbe(String command, long startNanos, Session session, long lineFrame) {
+            this.command = command;
+            this.startNanos = startNanos;
+            this.session = session;
+            this.lineFrame = lineFrame;
+        }
+    }
+    
+    /**
+     * A point in the ring where playback jumps: to the start of the next
+     * track, or back to the start of an A-B loop. A change of speed is a
+     * splice to the current position.
+     */
+    private static final class Splice {
+        final long ringSample;
+        final Track track;
+        final int startMillis;
+        final boolean entersTrack;
+        final double speed;
+        
+        // Frames written to the line before the splice, set by the output thread
+        long lineFrame = -1;
+        
+        Splice(long ringSample, Track track, int startMillis, boolean entersTrack, double speed) {
+            this.ringSample = ringSample;
+            this.track = track;
+            this.startMillis = startMillis;
+            this.entersTrack = entersTrack;
+            this.speed = speed;
         }
     }
 }
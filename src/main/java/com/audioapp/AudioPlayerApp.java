@@ -2,6 +2,7 @@ package com.audioapp;
 
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
+import java.io.File;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 import java.util.logging.ConsoleHandler;
@@ -19,13 +20,25 @@ public class AudioPlayerApp {
     
     /**
      * Main method to start the application.
+     * With {@code --render <file> [<output.wav>]} the file is rendered
+     * without a UI or sound card, into the WAV file if one is given, and
+     * the rendering speed is printed. With
+     * {@code --transcode <directory|playlist.m3u> <output directory> [wav|flac] [threads]}
+     * the files are converted in parallel and the throughput is printed.
      * 
-     * @param args Command line arguments (not used)
+     * @param args Command line arguments
      */
     public static void main(String[] args) {
         // Configure the logger
         configureLogger();
         
+        if (args.length >= 2 && args[0].equals("--render")) {
+            System.exit(render(new File(args[1]), args.length >= 3 ? new File(args[2]) : null));
+        }
+        if (args.length >= 3 && args[0].equals("--transcode")) {
+            System.exit(transcode(args));
+        }
+        
         LOGGER.info("Starting Audio Player application");
         
         // Run the application in the Event Dispatch Thread
@@ -45,6 +58,47 @@ public class AudioPlayerApp {
         });
     }
     
+    /**
+     * Renders a file offline, for measuring throughput or exporting.
+     * 
+     * @param file The file to render
+     * @param target The WAV file to write, or null to discard the audio
+     * @return Process exit code
+     */
+    private static int render(File file, File target) {
+        try {
+            NullAudioSink sink = target != null ? new WavFileSink(target) : new NullAudioSink();
+            OfflineRenderer.Result result = OfflineRenderer.render(new AudioPlayer(), file, sink);
+            System.out.println(file.getName() + ": " + result);
+            return 0;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Rendering failed", e);
+            return 1;
+        }
+    }
+    
+    /**
+     * Converts a directory or playlist, printing each file and the totals.
+     * 
+     * @param args The {@code --transcode} arguments
+     * @return Process exit code, 1 if any file failed
+     */
+    private static int transcode(String[] args) {
+        try {
+            BatchTranscoder.Format format = args.length >= 4
+                    ? BatchTranscoder.Format.valueOf(args[3].toUpperCase()) : BatchTranscoder.Format.WAV;
+            BatchTranscoder transcoder = args.length >= 5
+                    ? new BatchTranscoder(format, Integer.parseInt(args[4])) : new BatchTranscoder(format);
+            BatchTranscoder.Progress result = transcoder.transcode(new File(args[1]), new File(args[2]),
+                    (file, progress) -> System.out.println(file + " [" + progress + "]"));
+            System.out.println(result);
+            return result.getFailedFiles() == 0 ? 0 : 1;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Transcoding failed", e);
+            return 1;
+        }
+    }
+    
     /**
      * Configures the application logger.
      */
@@ -30,6 +30,7 @@ public class AudioPlayerUI extends JFrame {
     private JButton nextButton;
     private JToggleButton repeatButton;
     private JToggleButton shuffleButton;
+    private JToggleButton loopButton;
     private JToggleButton themeToggleButton;
     private JLabel statusLabel;
     private JProgressBar progressBar;
@@ -44,6 +45,14 @@ public class AudioPlayerUI extends JFrame {
     // Media player
     private MediaPlayerManager mediaPlayer;
     
+    // Pure-Java player for MP3 files, with software volume
+    private AudioPlayer audioPlayer;
+    private PlaybackProgressUpdater progressUpdater;
+    private boolean usingAudioPlayer = false;
+    
+    // Start of an A-B loop being marked, -1 when none
+    private int loopPointA = -1;
+    
     // File
     private File currentFile;
     
@@ -67,6 +76,7 @@ public class AudioPlayerUI extends JFrame {
         
         // Initialize media player
         mediaPlayer = new MediaPlayerManager();
+        audioPlayer = new AudioPlayer();
         
         // Check if media player was successfully initialized
         if (!mediaPlayer.isMediaPlayerAvailable()) {
@@ -131,6 +141,10 @@ public class AudioPlayerUI extends JFrame {
         // Initialize UI components
         initUI();
         
+        // Progress of the Java audio player comes from its playback clock
+        progressUpdater = new PlaybackProgressUpdater(audioPlayer, progressBar, statusLabel, durationLabel);
+        progressUpdater.start();
+        
         // Register keyboard shortcuts
         registerKeyboardShortcuts();
         
@@ -138,6 +152,8 @@ public class AudioPlayerUI extends JFrame {
         addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
+                progressUpdater.stopUpdater();
+                audioPlayer.release();
                 if (mediaPlayer != null) {
                     mediaPlayer.stop();
                     mediaPlayer.release();
@@ -206,12 +222,12 @@ public class AudioPlayerUI extends JFrame {
         // Make the progress bar clickable to seek
         progressBar.addMouseListener(new java.awt.event.MouseAdapter() {
             public void mouseClicked(java.awt.event.MouseEvent evt) {
-                if (currentFile != null && !mediaPlayer.isStopped()) {
+                if (currentFile != null && !isPlaybackStopped()) {
                     int mouseX = evt.getX();
                     int progressBarWidth = progressBar.getWidth();
                     float percentage = (float) mouseX / progressBarWidth;
-                    int seekPosition = (int) (percentage * mediaPlayer.getTotalDuration());
-                    mediaPlayer.seekTo(seekPosition);
+                    int seekPosition = (int) (percentage * getPlaybackDuration());
+                    seekPlayback(seekPosition);
                 }
             }
         });
@@ -252,6 +268,14 @@ public class AudioPlayerUI extends JFrame {
         playlistControlPanel.add(removeFromPlaylistButton);
         playlistControlPanel.add(clearPlaylistButton);
         
+        // Crossfade between playlist tracks, 0 for gapless
+        JSpinner crossfadeSpinner = new JSpinner(new SpinnerNumberModel(0, 0, AudioPlayer.MAX_CROSSFADE_MS / 1000, 1));
+        crossfadeSpinner.setToolTipText("Crossfade between playlist tracks in seconds");
+        crossfadeSpinner.addChangeListener(e ->
+            audioPlayer.setCrossfadeMillis((Integer) crossfadeSpinner.getValue() * 1000));
+        playlistControlPanel.add(new JLabel("Crossfade (s):"));
+        playlistControlPanel.add(crossfadeSpinner);
+        
         playlistPanel.add(playlistControlPanel, BorderLayout.SOUTH);
         
         // Add to split pane
@@ -266,16 +290,56 @@ public class AudioPlayerUI extends JFrame {
         
         volumeSlider = new JSlider(JSlider.HORIZONTAL, 0, 100, 80);
         volumeSlider.addChangeListener(e -> {
+            // The Java player ramps to the new gain within one output buffer
+            audioPlayer.setVolume(volumeSlider.getValue());
             if (mediaPlayer != null) {
                 mediaPlayer.setVolume(volumeSlider.getValue());
             }
         });
         volumePanel.add(volumeSlider, BorderLayout.CENTER);
         
+        // Equalizer preset for the Java audio player
+        JComboBox<ParametricEqualizer.Preset> equalizerBox = new JComboBox<>(ParametricEqualizer.Preset.values());
+        equalizerBox.setToolTipText("Equalizer preset");
+        equalizerBox.addActionListener(e ->
+            audioPlayer.getEqualizer().applyPreset((ParametricEqualizer.Preset) equalizerBox.getSelectedItem()));
+        
         // Theme toggle button
         themeToggleButton = new JToggleButton("Dark Theme");
         themeToggleButton.addActionListener(e -> toggleTheme());
-        volumePanel.add(themeToggleButton, BorderLayout.EAST);
+        
+        // Playback speed, pitch is kept by both players
+        JComboBox<String> speedBox = new JComboBox<>(new String[] {
+            "0.5x", "0.75x", "1x", "1.25x", "1.5x", "1.75x", "2x"
+        });
+        speedBox.setSelectedItem("1x");
+        speedBox.setToolTipText("Playback speed");
+        speedBox.addActionListener(e -> {
+            String item = (String) speedBox.getSelectedItem();
+            float speed = Float.parseFloat(item.substring(0, item.length() - 1));
+            audioPlayer.setPlaybackSpeed(speed);
+            if (mediaPlayer != null) {
+                mediaPlayer.setPlaybackRate(speed);
+            }
+        });
+        
+        // Video render statistics drawn over the picture
+        JToggleButton renderStatsButton = new JToggleButton("Stats");
+        renderStatsButton.setToolTipText("Show video frame rate, drops and render timings");
+        renderStatsButton.addActionListener(e -> {
+            if (mediaPlayer != null) {
+                mediaPlayer.setRenderStatsVisible(renderStatsButton.isSelected());
+            }
+        });
+        
+        JPanel volumeOptionsPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+        volumeOptionsPanel.add(new JLabel("Speed:"));
+        volumeOptionsPanel.add(speedBox);
+        volumeOptionsPanel.add(new JLabel("EQ:"));
+        volumeOptionsPanel.add(equalizerBox);
+        volumeOptionsPanel.add(renderStatsButton);
+        volumeOptionsPanel.add(themeToggleButton);
+        volumePanel.add(volumeOptionsPanel, BorderLayout.EAST);
         
         // Add volume panel to main panel
         JPanel southPanel = new JPanel(new BorderLayout());
@@ -318,6 +382,7 @@ public class AudioPlayerUI extends JFrame {
         repeatButton.addActionListener(e -> {
             repeat = repeatButton.isSelected();
             LOGGER.info("Repeat " + (repeat ? "enabled" : "disabled"));
+            updatePlaylistControls();
         });
         
         shuffleButton = new JToggleButton("🔀");
@@ -327,6 +392,10 @@ public class AudioPlayerUI extends JFrame {
             LOGGER.info("Shuffle " + (shuffle ? "enabled" : "disabled"));
         });
         
+        loopButton = new JToggleButton("A-B");
+        loopButton.setToolTipText("Mark loop start, then loop end (Ctrl+L)");
+        loopButton.addActionListener(e -> toggleLoop());
+        
         buttonPanel.add(loadButton);
         buttonPanel.add(previousButton);
         buttonPanel.add(playButton);
@@ -335,6 +404,7 @@ public class AudioPlayerUI extends JFrame {
         buttonPanel.add(nextButton);
         buttonPanel.add(repeatButton);
         buttonPanel.add(shuffleButton);
+        buttonPanel.add(loopButton);
         
         southPanel.add(buttonPanel, BorderLayout.SOUTH);
         mainPanel.add(southPanel, BorderLayout.SOUTH);
@@ -392,7 +462,7 @@ public class AudioPlayerUI extends JFrame {
             @Override
             public void actionPerformed(java.awt.event.ActionEvent e) {
                 if (currentFile != null) {
-                    if (mediaPlayer.isPaused() || mediaPlayer.isStopped()) {
+                    if (isPlaybackPaused() || isPlaybackStopped()) {
                         playMedia();
                     } else {
                         pauseMedia();
@@ -457,12 +527,21 @@ public class AudioPlayerUI extends JFrame {
             }
         });
         
+        // Ctrl+L for A-B loop
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_L, java.awt.event.InputEvent.CTRL_DOWN_MASK), "Loop");
+        actionMap.put("Loop", new AbstractAction() {
+            @Override
+            public void actionPerformed(java.awt.event.ActionEvent e) {
+                loopButton.doClick();
+            }
+        });
+        
         // F for fullscreen toggle (for videos)
         inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_F, 0), "FullScreen");
         actionMap.put("FullScreen", new AbstractAction() {
             @Override
             public void actionPerformed(java.awt.event.ActionEvent e) {
-                if (mediaPlayer.isVideo()) {
+                if (!usingAudioPlayer && mediaPlayer.isVideo()) {
                     toggleFullScreen();
                 }
             }
@@ -509,25 +588,22 @@ public class AudioPlayerUI extends JFrame {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Select a media file");
         fileChooser.setFileFilter(new FileNameExtensionFilter(
-                "Media files (*.mp3, *.wav, *.mp4, *.avi, *.mkv)", 
-                "mp3", "wav", "aiff", "mp4", "avi", "mkv", "mov", "wmv", "flv"));
+                "Media files (*.mp3, *.flac, *.wav, *.mp4, *.avi, *.mkv)", 
+                "mp3", "flac", "wav", "aiff", "aif", "mp4", "avi", "mkv", "mov", "wmv", "flv"));
         
         int result = fileChooser.showOpenDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
             currentFile = fileChooser.getSelectedFile();
             
             try {
-                // Stop any current playback
-                mediaPlayer.stop();
-                
                 // Load the new file
-                boolean loaded = mediaPlayer.loadFile(currentFile);
+                boolean loaded = loadMedia(currentFile);
                 if (loaded) {
                     statusLabel.setText("Loaded: " + currentFile.getName());
                     updateButtonStates(true, false, false);
                     
                     // Show/hide video panel based on media type
-                    boolean isVideo = mediaPlayer.isVideo();
+                    boolean isVideo = !usingAudioPlayer && mediaPlayer.isVideo();
                     videoPanel.setVisible(isVideo);
                     
                     // If it's a video, ensure the canvas is properly set up
@@ -574,7 +650,7 @@ public class AudioPlayerUI extends JFrame {
         if (currentFile != null) {
             try {
                 // For video files, ensure the video panel is visible
-                if (mediaPlayer.isVideo() && mediaPlayer.isMediaPlayerAvailable()) {
+                if (!usingAudioPlayer && mediaPlayer.isVideo() && mediaPlayer.isMediaPlayerAvailable()) {
                     LOGGER.info("Setting up video surface before playback");
                     
                     // Make sure videoPanel is visible
@@ -601,7 +677,11 @@ public class AudioPlayerUI extends JFrame {
                 }
                 
                 // Start playback
-                mediaPlayer.play();
+                if (usingAudioPlayer) {
+                    audioPlayer.play();
+                } else {
+                    mediaPlayer.play();
+                }
                 statusLabel.setText("Playing: " + currentFile.getName());
                 updateButtonStates(true, true, true);
             } catch (Exception e) {
@@ -617,7 +697,11 @@ public class AudioPlayerUI extends JFrame {
      * Pauses media playback.
      */
     private void pauseMedia() {
-        if (mediaPlayer != null) {
+        if (usingAudioPlayer) {
+            audioPlayer.pause();
+            statusLabel.setText("Paused: " + currentFile.getName());
+            updateButtonStates(true, false, true);
+        } else if (mediaPlayer != null) {
             mediaPlayer.pause();
             statusLabel.setText("Paused: " + currentFile.getName());
             updateButtonStates(true, false, true);
@@ -628,6 +712,7 @@ public class AudioPlayerUI extends JFrame {
      * Stops media playback and resets to the beginning.
      */
     private void stopMedia() {
+        audioPlayer.stop();
         if (mediaPlayer != null) {
             mediaPlayer.stop();
             progressBar.setValue(0);
@@ -689,8 +774,8 @@ public class AudioPlayerUI extends JFrame {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Add to playlist");
         fileChooser.setFileFilter(new FileNameExtensionFilter(
-                "Media files (*.mp3, *.wav, *.mp4, *.avi, *.mkv)", 
-                "mp3", "wav", "aiff", "mp4", "avi", "mkv", "mov", "wmv", "flv"));
+                "Media files (*.mp3, *.flac, *.wav, *.mp4, *.avi, *.mkv)", 
+                "mp3", "flac", "wav", "aiff", "aif", "mp4", "avi", "mkv", "mov", "wmv", "flv"));
         fileChooser.setMultiSelectionEnabled(true);
         
         int result = fileChooser.showOpenDialog(this);
@@ -755,19 +840,26 @@ public class AudioPlayerUI extends JFrame {
             currentPlaylistIndex = index;
             playlistList.setSelectedIndex(index);
             
+            // The audio player already continued into this file without a gap
+            if (usingAudioPlayer && !audioPlayer.isStopped()
+                    && playlist.get(index).equals(audioPlayer.getCurrentFile())) {
+                currentFile = playlist.get(index);
+                statusLabel.setText("Playing: " + currentFile.getName());
+                resetLoop();
+                updatePlaylistControls();
+                return;
+            }
+            
             try {
-                // Stop current playback
-                mediaPlayer.stop();
-                
                 // Load and play the new file
                 currentFile = playlist.get(index);
-                boolean loaded = mediaPlayer.loadFile(currentFile);
+                boolean loaded = loadMedia(currentFile);
                 
                 if (loaded) {
                     statusLabel.setText("Loaded: " + currentFile.getName());
                     
                     // Show/hide video panel based on media type
-                    boolean isVideo = mediaPlayer.isVideo();
+                    boolean isVideo = !usingAudioPlayer && mediaPlayer.isVideo();
                     videoPanel.setVisible(isVideo);
                     
                     // If it's a video, ensure the video surface is properly displayable
@@ -793,6 +885,118 @@ public class AudioPlayerUI extends JFrame {
         }
     }
     
+    /**
+     * Stops both players and loads a file into the one that handles it.
+     * MP3 files play through the Java audio player, everything else through VLC.
+     * 
+     * @param file The media file to load
+     * @return true if the file was loaded successfully
+     */
+    private boolean loadMedia(File file) throws Exception {
+        audioPlayer.stop();
+        mediaPlayer.stop();
+        resetLoop();
+        
+        usingAudioPlayer = isAudioPlayerFile(file);
+        if (loopButton != null) {
+            loopButton.setEnabled(usingAudioPlayer);
+        }
+        if (usingAudioPlayer) {
+            return audioPlayer.loadFile(file);
+        }
+        
+        // The Java player keeps its line open between files; hand the device to VLC
+        audioPlayer.release();
+        return mediaPlayer.loadFile(file);
+    }
+    
+    /**
+     * Steps through the A-B loop states: the first press marks the loop
+     * start, the second marks the end and starts looping, the third clears it.
+     * Only files played by the Java audio player (MP3, FLAC, WAV and AIFF)
+     * can loop; for other files the button is disabled.
+     */
+    private void toggleLoop() {
+        if (!usingAudioPlayer || audioPlayer.isStopped()) {
+            resetLoop();
+            return;
+        }
+        
+        if (audioPlayer.isLooping()) {
+            audioPlayer.clearLoop();
+            resetLoop();
+            statusLabel.setText("Loop cleared");
+        } else if (loopPointA < 0) {
+            loopPointA = audioPlayer.getCurrentPosition();
+            loopButton.setText("A-…");
+            loopButton.setSelected(false);
+            statusLabel.setText("Loop start: " + formatTime(loopPointA));
+        } else if (audioPlayer.setLoop(loopPointA, audioPlayer.getCurrentPosition())) {
+            loopButton.setText("A-B");
+            loopButton.setSelected(true);
+            loopPointA = -1;
+            statusLabel.setText("Looping: " + currentFile.getName());
+        } else {
+            resetLoop();
+            statusLabel.setText("Loop not available yet");
+        }
+    }
+    
+    /**
+     * Returns the A-B loop button to its initial state.
+     */
+    private void resetLoop() {
+        loopPointA = -1;
+        if (loopButton != null) {
+            loopButton.setText("A-B");
+            loopButton.setSelected(false);
+        }
+    }
+    
+    /**
+     * Checks whether a file is played by the Java audio player.
+     * 
+     * @param file The media file
+     * @return true if the Java audio player supports the file
+     */
+    private boolean isAudioPlayerFile(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".mp3") || name.endsWith(".flac") || name.endsWith(".wav")
+                || name.endsWith(".aiff") || name.endsWith(".aif");
+    }
+    
+    /**
+     * Checks if the active player is paused.
+     */
+    private boolean isPlaybackPaused() {
+        return usingAudioPlayer ? audioPlayer.isPaused() : mediaPlayer.isPaused();
+    }
+    
+    /**
+     * Checks if the active player is stopped.
+     */
+    private boolean isPlaybackStopped() {
+        return usingAudioPlayer ? audioPlayer.isStopped() : mediaPlayer.isStopped();
+    }
+    
+    /**
+     * Gets the duration of the media in the active player.
+     */
+    private int getPlaybackDuration() {
+        return usingAudioPlayer ? audioPlayer.getTotalDuration() : mediaPlayer.getTotalDuration();
+    }
+    
+    /**
+     * Seeks the active player.
+     */
+    private void seekPlayback(int position) {
+        if (usingAudioPlayer) {
+            audioPlayer.seekTo(position);
+        } else {
+            mediaPlayer.seekTo(position);
+        }
+    }
+    
     /**
      * Updates the enabled state of the playlist control buttons.
      */
@@ -804,6 +1008,27 @@ public class AudioPlayerUI extends JFrame {
         nextButton.setEnabled(hasItems && (currentPlaylistIndex < playlist.size() - 1 || repeat));
         repeatButton.setEnabled(hasMultipleItems);
         shuffleButton.setEnabled(hasMultipleItems);
+        queueNextTrack();
+    }
+    
+    /**
+     * Tells the audio player which playlist entry follows the current one,
+     * so it can be pre-decoded and played without a gap.
+     */
+    private void queueNextTrack() {
+        if (!usingAudioPlayer) {
+            return;
+        }
+        
+        int next = -1;
+        if (currentPlaylistIndex >= 0 && currentPlaylistIndex < playlist.size() - 1) {
+            next = currentPlaylistIndex + 1;
+        } else if (!playlist.isEmpty() && repeat) {
+            next = 0;
+        }
+        
+        File nextFile = next >= 0 ? playlist.get(next) : null;
+        audioPlayer.setNextFile(nextFile != null && isAudioPlayerFile(nextFile) ? nextFile : null);
     }
     
     /**
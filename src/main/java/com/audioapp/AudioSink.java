@@ -0,0 +1,96 @@
+package com.audioapp;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Destination of the AudioPlayer's output thread: the sound card, or a
+ * sink that consumes audio as fast as it is produced, for rendering
+ * offline. Sinks report how many frames they have played so the clock
+ * and splices work the same way for every destination.
+ */
+public interface AudioSink {
+    
+    /**
+     * Opens the sink for a stream format.
+     * 
+     * @param sampleRate Sample rate in Hz
+     * @param channels Number of interleaved channels
+     * @param bufferMillis Requested buffer length, 0 for the sink's default
+     * @throws Exception If the sink cannot be opened
+     */
+    void open(int sampleRate, int channels, int bufferMillis) throws Exception;
+    
+    /**
+     * Checks if the sink is open.
+     * 
+     * @return true if open
+     */
+    boolean isOpen();
+    
+    /**
+     * Checks whether the sink plays at the speed of a clock. Sinks that do
+     * not take audio as fast as it comes are not starved when the decoder
+     * cannot keep up.
+     * 
+     * @return true for a sound card, false for an offline sink
+     */
+    boolean isRealtime();
+    
+    /**
+     * Gets the format the sink was opened with.
+     * 
+     * @return The audio format, or null if not open
+     */
+    AudioFormat getFormat();
+    
+    /**
+     * Gets the size of the sink's buffer.
+     * 
+     * @return Buffer length in sample frames, or 0 if not open
+     */
+    int getBufferFrames();
+    
+    /**
+     * Writes interleaved samples, blocking while the sink is full.
+     * 
+     * @param samples Sample buffer
+     * @param offset Index of the first sample to write
+     * @param length Number of samples to write
+     */
+    void write(short[] samples, int offset, int length);
+    
+    /**
+     * Pauses the sink, keeping what it has buffered.
+     */
+    void pause();
+    
+    /**
+     * Resumes a paused sink where it stopped.
+     */
+    void resume();
+    
+    /**
+     * Blocks until everything written has been played.
+     */
+    void drain();
+    
+    /**
+     * Discards buffered samples and stops the sink, keeping it open for
+     * the next session. The frame position counts from 0 again, and
+     * resume starts the sink.
+     */
+    void flush();
+    
+    /**
+     * Gets the number of sample frames played since the sink was opened
+     * or last flushed.
+     * 
+     * @return Frames played
+     */
+    long getFramePosition();
+    
+    /**
+     * Discards buffered samples and closes the sink.
+     */
+    void close();
+}
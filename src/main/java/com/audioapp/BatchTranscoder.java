@@ -0,0 +1,619 @@
+package com.audioapp;
+
+import javax.sound.sampled.AudioSystem;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Converts a directory tree or a playlist of audio files to WAV or FLAC
+ * without the player. Each file is decoded by the same decoders playback
+ * uses and written straight into a file sink, so nothing is resampled or
+ * processed. Files are converted in parallel by a fixed pool of workers,
+ * one per core by default; at most two files per worker are queued, and
+ * each worker blocks on its own writes, so a slow disk holds the decoders
+ * back instead of filling memory.
+ * <p>
+ * Output is always 16-bit, the depth the decoders produce. A source with
+ * deeper samples, such as a 24-bit FLAC or WAV file, is not converted to
+ * FLAC, since the result would not be lossless; the file is reported as
+ * failed. Converted to WAV it is truncated to 16 bits with a warning.
+ */
+public final class BatchTranscoder {
+    
+    private static final Logger LOGGER = Logger.getLogger(BatchTranscoder.class.getName());
+    
+    // Extensions taken from a directory
+    private static final String[] AUDIO_EXTENSIONS = {".mp3", ".flac", ".wav", ".aiff", ".aif"};
+    
+    // Files queued per worker beyond the ones being converted
+    private static final int QUEUE_PER_WORKER = 2;
+    
+    /**
+     * Output file format.
+     */
+    public enum Format {
+        WAV(".wav"),
+        FLAC(".flac");
+        
+        private final String extension;
+        
+        Format(String extension) {
+            this.extension = extension;
+        }
+        
+        /**
+         * Gets the file name extension of the format.
+         * 
+         * @return Extension including the dot
+         */
+        public String getExtension() {
+            return extension;
+        }
+        
+        /**
+         * Creates a sink writing this format.
+         * 
+         * @param file The file to write
+         * @return The sink
+         */
+        NullAudioSink createSink(File file) {
+            return this == FLAC ? new FlacFileSink(file) : new WavFileSink(file);
+        }
+    }
+    
+    /**
+     * Receives a report after each file, on the worker that converted it.
+     */
+    public interface ProgressListener {
+        
+        /**
+         * Called when a file has been converted or has failed.
+         * 
+         * @param file Result for the file
+         * @param progress Totals including the file
+         */
+        void fileFinished(FileResult file, Progress progress);
+    }
+    
+    /**
+     * Outcome of one file.
+     */
+    public static final class FileResult {
+        private final File input;
+        private final File output;
+        private final long audioMillis;
+        private final long elapsedNanos;
+        private final Exception error;
+        
+        FileResult(File input, File output, long audioMillis, long elapsedNanos, Exception error) {
+            this.input = input;
+            this.output = output;
+            this.audioMillis = audioMillis;
+            this.elapsedNanos = elapsedNanos;
+            this.error = error;
+        }
+        
+        /**
+         * Gets the source file.
+         * 
+         * @return The input file
+         */
+        public File getInput() {
+            return input;
+        }
+        
+        /**
+         * Gets the converted file.
+         * 
+         * @return The output file
+         */
+        public File getOutput() {
+            return output;
+        }
+        
+        /**
+         * Gets the length of the converted audio.
+         * 
+         * @return Audio length in milliseconds
+         */
+        public long getAudioMillis() {
+            return audioMillis;
+        }
+        
+        /**
+         * Gets the time spent on the file.
+         * 
+         * @return Conversion time in milliseconds
+         */
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+        
+        /**
+         * Gets the reason the file failed.
+         * 
+         * @return The error, or null if the file was converted
+         */
+        public Exception getError() {
+            return error;
+        }
+        
+        @Override
+        public String toString() {
+            if (error != null) {
+                return input.getName() + ": failed, " + error.getMessage();
+            }
+            double factor = elapsedNanos > 0 ? audioMillis * 1e6 / elapsedNanos : 0;
+            return String.format(Locale.ROOT, "%s: %d ms of audio in %d ms, %.1fx realtime",
+                    input.getName(), audioMillis, getElapsedMillis(), factor);
+        }
+    }
+    
+    /**
+     * Totals of a batch so far.
+     */
+    public static final class Progress {
+        private final int totalFiles;
+        private final int completedFiles;
+        private final int failedFiles;
+        private final long bytesRead;
+        private final long bytesWritten;
+        private final long audioMillis;
+        private final long elapsedNanos;
+        
+        Progress(int totalFiles, int completedFiles, int failedFiles, long bytesRead, long bytesWritten,
+                long audioMillis, long elapsedNanos) {
+            this.totalFiles = totalFiles;
+            this.completedFiles = completedFiles;
+            this.failedFiles = failedFiles;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.audioMillis = audioMillis;
+            this.elapsedNanos = elapsedNanos;
+        }
+        
+        /**
+         * Gets the number of files in the batch.
+         * 
+         * @return Number of files
+         */
+        public int getTotalFiles() {
+            return totalFiles;
+        }
+        
+        /**
+         * Gets the number of files converted.
+         * 
+         * @return Converted files, not counting failures
+         */
+        public int getCompletedFiles() {
+            return completedFiles;
+        }
+        
+        /**
+         * Gets the number of files that failed.
+         * 
+         * @return Failed files
+         */
+        public int getFailedFiles() {
+            return failedFiles;
+        }
+        
+        /**
+         * Gets the size of the converted input files.
+         * 
+         * @return Bytes read
+         */
+        public long getBytesRead() {
+            return bytesRead;
+        }
+        
+        /**
+         * Gets the size of the files written.
+         * 
+         * @return Bytes written
+         */
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+        
+        /**
+         * Gets the length of all converted audio.
+         * 
+         * @return Audio length in milliseconds
+         */
+        public long getAudioMillis() {
+            return audioMillis;
+        }
+        
+        /**
+         * Gets the time since the batch started.
+         * 
+         * @return Wall-clock time in milliseconds
+         */
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+        
+        /**
+         * Gets the file throughput.
+         * 
+         * @return Files finished per second, failures included
+         */
+        public double getFilesPerSecond() {
+            return elapsedNanos > 0 ? (completedFiles + failedFiles) * 1e9 / elapsedNanos : 0;
+        }
+        
+        /**
+         * Gets the input throughput.
+         * 
+         * @return Megabytes of input converted per second
+         */
+        public double getMegabytesPerSecond() {
+            return elapsedNanos > 0 ? bytesRead * 1e9 / elapsedNanos / (1024 * 1024) : 0;
+        }
+        
+        /**
+         * Gets the audio throughput of the whole batch.
+         * 
+         * @return Audio time converted per wall-clock time
+         */
+        public double getRealtimeFactor() {
+            return elapsedNanos > 0 ? audioMillis * 1e6 / elapsedNanos : 0;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%d/%d files (%d failed), %.1f files/s, %.1f MB/s, %.1fx realtime, %.1f MB written in %d ms",
+                    completedFiles + failedFiles, totalFiles, failedFiles, getFilesPerSecond(),
+                    getMegabytesPerSecond(), getRealtimeFactor(), bytesWritten / (1024.0 * 1024),
+                    getElapsedMillis());
+        }
+    }
+    
+    private final Format format;
+    private final int threads;
+    
+    // Totals of the running batch, updated by the workers
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong audioMillis = new AtomicLong();
+    private volatile int totalFiles;
+    private volatile long startNanos;
+    
+    /**
+     * Creates a transcoder with one worker per core.
+     * 
+     * @param format Output format
+     */
+    public BatchTranscoder(Format format) {
+        this(format, Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Creates a transcoder.
+     * 
+     * @param format Output format
+     * @param threads Number of files converted at once
+     */
+    public BatchTranscoder(Format format, int threads) {
+        this.format = format;
+        this.threads = Math.max(1, threads);
+    }
+    
+    /**
+     * Converts every audio file in a directory tree or a playlist and waits
+     * for the batch to finish. A directory's layout is kept under the output
+     * directory; a playlist's files are written side by side.
+     * 
+     * @param input A directory, or an M3U playlist
+     * @param outputDir Directory for the converted files, created if missing
+     * @param listener Receives a report after each file, or null
+     * @return Totals of the batch
+     * @throws IOException If the input cannot be listed or the output directory cannot be created
+     * @throws InterruptedException If the calling thread is interrupted, which cancels the batch
+     */
+    public Progress transcode(File input, File outputDir, ProgressListener listener)
+            throws IOException, InterruptedException {
+        List<File[]> jobs = collectJobs(input, outputDir);
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Could not create " + outputDir);
+        }
+        
+        completed.set(0);
+        failed.set(0);
+        bytesRead.set(0);
+        bytesWritten.set(0);
+        audioMillis.set(0);
+        totalFiles = jobs.size();
+        startNanos = System.nanoTime();
+        LOGGER.info("Converting " + jobs.size() + " file(s) to " + format + " with " + threads + " worker(s)");
+        
+        AtomicInteger workerCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "BatchTranscoder-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        // Back-pressure: a file is queued only once a slot frees up, one running and some waiting per worker
+        Semaphore slots = new Semaphore(threads * (1 + QUEUE_PER_WORKER));
+        try {
+            for (File[] job : jobs) {
+                slots.acquire();
+                workers.execute(() -> {
+                    try {
+                        FileResult result = convert(job[0], job[1]);
+                        if (listener != null) {
+                            listener.fileFinished(result, getProgress());
+                        }
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+            workers.shutdown();
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Keep waiting, the batch has no time limit
+            }
+        } finally {
+            if (!workers.isTerminated()) {
+                workers.shutdownNow();
+            }
+        }
+        
+        Progress progress = getProgress();
+        LOGGER.info("Batch finished: " + progress);
+        return progress;
+    }
+    
+    /**
+     * Gets the totals of the running or last batch.
+     * 
+     * @return Current totals
+     */
+    public Progress getProgress() {
+        return new Progress(totalFiles, completed.get(), failed.get(), bytesRead.get(), bytesWritten.get(),
+                audioMillis.get(), System.nanoTime() - startNanos);
+    }
+    
+    /**
+     * Converts one file, decoding it from start to end into a file sink.
+     * 
+     * @param input The audio file
+     * @param output The file to write
+     * @return Result for the file
+     */
+    private FileResult convert(File input, File output) {
+        long started = System.nanoTime();
+        NullAudioSink sink = format.createSink(output);
+        MappedAudioSource source = null;
+        TrackDecoder decoder = null;
+        try {
+            if (input.getCanonicalFile().equals(output.getCanonicalFile())) {
+                throw new IOException("Output would overwrite the input");
+            }
+            File parent = output.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Could not create " + parent);
+            }
+            
+            if (AudioPlayer.isFlac(input) || AudioPlayer.isPcmFile(input) || AudioPlayer.isMp3(input)) {
+                source = MappedAudioSource.open(input);
+            }
+            decoder = openDecoder(input, source);
+            
+            while (!Thread.currentThread().isInterrupted() && decoder.next()) {
+                if (!sink.isOpen()) {
+                    sink.open(decoder.getSampleRate(), decoder.getChannels(), 0);
+                }
+                sink.write(decoder.getBuffer(), decoder.getOffset(), decoder.getLength());
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Cancelled");
+            }
+            if (!sink.isOpen()) {
+                throw new IOException("No audio decoded");
+            }
+            
+            long frames = sink.getFramesWritten();
+            long millis = frames * 1000 / sink.getSampleRate();
+            sink.close();
+            
+            completed.incrementAndGet();
+            bytesRead.addAndGet(input.length());
+            bytesWritten.addAndGet(output.length());
+            audioMillis.addAndGet(millis);
+            return new FileResult(input, output, millis, System.nanoTime() - started, null);
+        } catch (Exception e) {
+            sink.close();
+            output.delete();
+            failed.incrementAndGet();
+            LOGGER.log(Level.WARNING, "Could not convert " + input, e);
+            return new FileResult(input, output, 0, System.nanoTime() - started, e);
+        } finally {
+            if (decoder != null) {
+                decoder.close();
+            }
+            if (source != null) {
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Error closing " + input.getName(), e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Opens a decoder at the start of a file, picking the decoder the way
+     * playback does.
+     * 
+     * @param file The audio file
+     * @param source Mapping of the file, or null for files only Java Sound reads
+     * @return The decoder
+     * @throws Exception If the file cannot be decoded, or not without losing bits
+     */
+    private TrackDecoder openDecoder(File file, MappedAudioSource source) throws Exception {
+        if (AudioPlayer.isFlac(file)) {
+            FlacMetadata metadata = FlacMetadata.read(file);
+            checkBitDepth(file, metadata.getBitsPerSample());
+            return new FlacTrackDecoder(source, metadata, 0);
+        }
+        if (AudioPlayer.isPcmFile(file)) {
+            PcmFileFormat pcmFormat = null;
+            try {
+                pcmFormat = PcmFileFormat.read(file);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Converting " + file.getName() + " through Java Sound", e);
+            }
+            if (pcmFormat != null) {
+                checkBitDepth(file, pcmFormat.getBitsPerSample());
+                return new PcmTrackDecoder(source, pcmFormat, 0);
+            }
+        }
+        if (!AudioPlayer.isMp3(file)) {
+            checkBitDepth(file, AudioSystem.getAudioFileFormat(file).getFormat().getSampleSizeInBits());
+            return new JavaSoundTrackDecoder(file, 0);
+        }
+        
+        Mp3VbrHeader header = null;
+        try {
+            header = Mp3VbrHeader.read(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "No MP3 header in " + file.getName(), e);
+        }
+        return new Mp3TrackDecoder(source, header, header != null ? header.byteOffsetFor(0) : 0, 0);
+    }
+    
+    /**
+     * Refuses a source deeper than the 16-bit output when writing FLAC,
+     * and warns when writing WAV.
+     * 
+     * @param file The source file
+     * @param bits Bits per sample of the source, not positive if unknown
+     * @throws IOException If the output would be FLAC
+     */
+    private void checkBitDepth(File file, int bits) throws IOException {
+        if (bits <= 16) {
+            return;
+        }
+        if (format == Format.FLAC) {
+            throw new IOException(file.getName() + " has " + bits
+                    + "-bit samples, FLAC output is 16-bit and would not be lossless");
+        }
+        LOGGER.warning("Truncating " + file.getName() + " from " + bits + " to 16 bits");
+    }
+    
+    /**
+     * Lists the files of a batch with the file each is converted to.
+     * 
+     * @param input A directory, or an M3U playlist
+     * @param outputDir Directory for the converted files
+     * @return Pairs of input and output file
+     * @throws IOException If the input cannot be read
+     */
+    private List<File[]> collectJobs(File input, File outputDir) throws IOException {
+        List<File[]> jobs = new ArrayList<>();
+        if (input.isDirectory()) {
+            collectDirectory(input, outputDir, jobs);
+            return jobs;
+        }
+        
+        // Playlist entries go side by side, repeated names are numbered
+        Set<String> names = new HashSet<>();
+        for (File file : readPlaylist(input)) {
+            jobs.add(new File[] {file, new File(outputDir, uniqueName(file, names))});
+        }
+        return jobs;
+    }
+    
+    /**
+     * Names the output of a file after it, numbering a name already taken
+     * in the same output directory. Names are compared ignoring case.
+     */
+    private String uniqueName(File file, Set<String> names) {
+        String base = baseName(file);
+        String name = base + format.getExtension();
+        for (int n = 2; !names.add(name.toLowerCase(Locale.ROOT)); n++) {
+            name = base + "-" + n + format.getExtension();
+        }
+        return name;
+    }
+    
+    /**
+     * Adds the audio files of a directory tree, in name order. Files that
+     * differ only in extension, such as song.mp3 and song.flac, are
+     * numbered like repeated playlist entries.
+     */
+    private void collectDirectory(File dir, File outputDir, List<File[]> jobs) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IOException("Could not list " + dir);
+        }
+        Arrays.sort(files);
+        Set<String> names = new HashSet<>();
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectDirectory(file, new File(outputDir, file.getName()), jobs);
+            } else if (isAudioFile(file)) {
+                jobs.add(new File[] {file, new File(outputDir, uniqueName(file, names))});
+            }
+        }
+    }
+    
+    /**
+     * Reads the file entries of an M3U playlist, relative to the playlist.
+     * 
+     * @param playlist The playlist file
+     * @return The files in playlist order
+     * @throws IOException If the playlist cannot be read
+     */
+    private static List<File> readPlaylist(File playlist) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (String line : Files.readAllLines(playlist.toPath(), StandardCharsets.UTF_8)) {
+            String entry = line.replace("\uFEFF", "").trim();
+            if (entry.isEmpty() || entry.startsWith("#")) {
+                continue;
+            }
+            File file = new File(entry);
+            files.add(file.isAbsolute() ? file : new File(playlist.getAbsoluteFile().getParentFile(), entry));
+        }
+        return files;
+    }
+    
+    private static boolean isAudioFile(File file) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        for (String extension : AUDIO_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static String baseName(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
@@ -0,0 +1,157 @@
+package com.audioapp;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Mixes the tail of an outgoing track under the start of the incoming one
+ * with an equal-power curve, so the combined loudness stays constant
+ * through the transition. The incoming track drives the timing; samples
+ * of the outgoing track are pulled from its decoder as needed. Mixing
+ * reuses one output buffer and a precomputed gain table.
+ */
+final class CrossfadeMixer {
+    
+    private static final Logger LOGGER = Logger.getLogger(CrossfadeMixer.class.getName());
+    
+    // Resolution of the gain table, gains in between are interpolated
+    private static final int CURVE_STEPS = 1024;
+    
+    // Incoming gain sin(t), outgoing gain cos(t) = the table read backwards
+    private static final float[] CURVE = new float[CURVE_STEPS + 1];
+    
+    static {
+        for (int i = 0; i <= CURVE_STEPS; i++) {
+            CURVE[i] = (float) Math.sin(Math.PI / 2 * i / CURVE_STEPS);
+        }
+    }
+    
+    private short[] mixed = new short[0];
+    
+    // Outgoing track, null when no fade is running
+    private TrackDecoder outgoing;
+    private short[] pending;
+    private int pendingOffset;
+    private int pendingLength;
+    
+    private int channels;
+    private long fadeFrames;
+    private long doneFrames;
+    
+    /**
+     * Starts a fade. The outgoing decoder's current chunk is the first
+     * audio mixed; the mixer closes the decoder when the fade ends.
+     * 
+     * @param decoder Decoder of the outgoing track, positioned where the fade starts
+     * @param frames Length of the fade in sample frames
+     */
+    void start(TrackDecoder decoder, long frames) {
+        stop();
+        outgoing = decoder;
+        pending = decoder.getBuffer();
+        pendingOffset = decoder.getOffset();
+        pendingLength = decoder.getLength();
+        channels = decoder.getChannels();
+        fadeFrames = Math.max(1, frames);
+        doneFrames = 0;
+    }
+    
+    /**
+     * Checks whether a fade is running.
+     * 
+     * @return true while the outgoing track is being mixed in
+     */
+    boolean isActive() {
+        return outgoing != null;
+    }
+    
+    /**
+     * Mixes a chunk of the incoming track with the outgoing track.
+     * 
+     * @param samples Interleaved samples of the incoming track
+     * @param offset Index of the first sample
+     * @param length Number of samples
+     * @return Number of samples written to {@link #getOutput()}, always length
+     */
+    int mix(short[] samples, int offset, int length) {
+        if (mixed.length < length) {
+            mixed = new short[length];
+        }
+        
+        int frames = length / channels;
+        int frame = 0;
+        while (frame < frames && outgoing != null) {
+            if (pendingLength == 0 && !nextOutgoing()) {
+                break;
+            }
+            
+            int count = (int) Math.min(Math.min(frames - frame, pendingLength / channels), fadeFrames - doneFrames);
+            for (int f = 0; f < count; f++) {
+                // Position on the curve, in table steps
+                float t = (float) (doneFrames + f) * CURVE_STEPS / fadeFrames;
+                int step = Math.min((int) t, CURVE_STEPS - 1);
+                float fraction = t - step;
+                float in = CURVE[step] + (CURVE[step + 1] - CURVE[step]) * fraction;
+                float out = CURVE[CURVE_STEPS - step] + (CURVE[CURVE_STEPS - step - 1] - CURVE[CURVE_STEPS - step]) * fraction;
+                
+                int i = (frame + f) * channels;
+                int o = pendingOffset + f * channels;
+                for (int c = 0; c < channels; c++) {
+                    mixed[i + c] = GainStage.clip(samples[offset + i + c] * in + pending[o + c] * out);
+                }
+            }
+            
+            frame += count;
+            doneFrames += count;
+            pendingOffset += count * channels;
+            pendingLength -= count * channels;
+            if (doneFrames >= fadeFrames) {
+                stop();
+            }
+        }
+        
+        // The rest of the chunk is the incoming track alone
+        System.arraycopy(samples, offset + frame * channels, mixed, frame * channels, length - frame * channels);
+        return length;
+    }
+    
+    /**
+     * Gets the mixed samples produced by the last call.
+     * 
+     * @return Output buffer, valid until the next call
+     */
+    short[] getOutput() {
+        return mixed;
+    }
+    
+    /**
+     * Ends the fade early and closes the outgoing decoder.
+     */
+    void stop() {
+        if (outgoing != null) {
+            outgoing.close();
+            outgoing = null;
+            pending = null;
+        }
+    }
+    
+    /**
+     * Fetches the next chunk of the outgoing track.
+     * 
+     * @return false once the outgoing track has ended, which ends the fade
+     */
+    private boolean nextOutgoing() {
+        try {
+            if (outgoing.next()) {
+                pending = outgoing.getBuffer();
+                pendingOffset = outgoing.getOffset();
+                pendingLength = outgoing.getLength();
+                return true;
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Outgoing track stopped decoding during the crossfade", e);
+        }
+        stop();
+        return false;
+    }
+}
@@ -0,0 +1,532 @@
+package com.audioapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sink that encodes the player's output losslessly to a 16-bit FLAC file.
+ * Each channel of a block is coded with the best of the fixed predictors
+ * of order 0 to 4 and a partitioned Rice code for the residual, falling
+ * back to verbatim samples when prediction does not pay. STREAMINFO,
+ * including the MD5 of the audio, is completed when the sink is closed.
+ * All buffers are allocated when the sink opens.
+ */
+public class FlacFileSink extends NullAudioSink {
+    
+    private static final Logger LOGGER = Logger.getLogger(FlacFileSink.class.getName());
+    
+    // Samples per channel in a block
+    private static final int BLOCK_SIZE = 4096;
+    
+    // Highest residual partition order tried
+    private static final int MAX_PARTITION_ORDER = 6;
+    
+    // Largest Rice parameter, 15 is the escape code
+    private static final int MAX_RICE_PARAMETER = 14;
+    
+    // "fLaC", the STREAMINFO block header and its 34 bytes
+    private static final int HEADER_SIZE = 42;
+    
+    private static final int[] CRC16 = new int[256];
+    
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x8005 : crc << 1;
+            }
+            CRC16[i] = crc & 0xFFFF;
+        }
+    }
+    
+    private final File file;
+    private FileChannel channel;
+    private MessageDigest md5;
+    
+    private int sampleRate;
+    private int channels;
+    private int[][] block;
+    private int blockFill;
+    private int[] residual;
+    private long[] partitionSums;
+    private byte[] md5Bytes;
+    private BitWriter bits;
+    
+    private long frameNumber;
+    private long totalSamples;
+    private int minFrameSize;
+    private int maxFrameSize;
+    private long fileBytes;
+    
+    /**
+     * Creates a sink that will write to a file, replacing it when opened.
+     * 
+     * @param file The FLAC file to write
+     */
+    public FlacFileSink(File file) {
+        this.file = file;
+    }
+    
+    @Override
+    public synchronized void open(int sampleRate, int channels, int bufferMillis) throws Exception {
+        super.open(sampleRate, channels, bufferMillis);
+        if (channels > 8) {
+            throw new IOException("FLAC holds at most 8 channels, not " + channels);
+        }
+        
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        block = new int[channels][BLOCK_SIZE];
+        blockFill = 0;
+        residual = new int[BLOCK_SIZE];
+        partitionSums = new long[1 << MAX_PARTITION_ORDER];
+        md5Bytes = new byte[BLOCK_SIZE * channels * 2];
+        bits = new BitWriter(BLOCK_SIZE * channels * 3 + 64);
+        frameNumber = 0;
+        totalSamples = 0;
+        minFrameSize = Integer.MAX_VALUE;
+        maxFrameSize = 0;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            md5 = null;
+        }
+        
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        out.setLength(0);
+        channel = out.getChannel();
+        writeStreamInfo();
+        fileBytes = HEADER_SIZE;
+        
+        LOGGER.info("Encoding " + sampleRate + "Hz, " + channels + " channel(s) to " + file.getName());
+    }
+    
+    @Override
+    public synchronized void write(short[] samples, int offset, int length) {
+        if (channel == null) {
+            return;
+        }
+        
+        try {
+            int frames = length / channels;
+            int index = offset;
+            int done = 0;
+            while (done < frames) {
+                int count = Math.min(frames - done, BLOCK_SIZE - blockFill);
+                for (int f = 0; f < count; f++) {
+                    for (int c = 0; c < channels; c++) {
+                        block[c][blockFill + f] = samples[index++];
+                    }
+                }
+                updateMd5(samples, index - count * channels, count * channels);
+                blockFill += count;
+                done += count;
+                if (blockFill == BLOCK_SIZE) {
+                    writeFrame();
+                }
+            }
+            super.write(samples, offset, length);
+        } catch (IOException e) {
+            // The output thread only sees a sink that stops taking audio
+            LOGGER.log(Level.WARNING, "Could not write to " + file.getName(), e);
+            closeFile(false);
+        }
+    }
+    
+    @Override
+    public void close() {
+        closeFile(true);
+        super.close();
+    }
+    
+    /**
+     * Gets the file the sink writes.
+     * 
+     * @return The FLAC file
+     */
+    public File getFile() {
+        return file;
+    }
+    
+    /**
+     * Writes the last partial block, completes STREAMINFO and closes the file.
+     */
+    private synchronized void closeFile(boolean complete) {
+        FileChannel current = channel;
+        if (current == null) {
+            return;
+        }
+        
+        try {
+            if (complete) {
+                if (blockFill > 0) {
+                    writeFrame();
+                }
+                writeStreamInfo();
+                LOGGER.info("Encoded " + totalSamples + " frames to " + file.getName() + ", " + fileBytes + " bytes");
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not finish " + file.getName(), e);
+        } finally {
+            channel = null;
+            try {
+                current.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Error closing " + file.getName(), e);
+            }
+        }
+    }
+    
+    /**
+     * Writes the stream marker and STREAMINFO at the start of the file.
+     */
+    private void writeStreamInfo() throws IOException {
+        BitWriter header = new BitWriter(HEADER_SIZE);
+        header.write(0x664C6143, 32);
+        
+        // Last metadata block, type 0, 34 bytes
+        header.write(0x80, 8);
+        header.write(34, 24);
+        header.write(BLOCK_SIZE, 16);
+        header.write(BLOCK_SIZE, 16);
+        header.write(maxFrameSize > 0 ? minFrameSize : 0, 24);
+        header.write(maxFrameSize, 24);
+        header.write(sampleRate, 20);
+        header.write(channels - 1, 3);
+        header.write(15, 5);
+        header.write((int) (totalSamples >>> 32) & 0xF, 4);
+        header.write((int) totalSamples, 32);
+        
+        byte[] digest = md5 != null && totalSamples > 0 ? md5.digest() : new byte[16];
+        for (byte b : digest) {
+            header.write(b, 8);
+        }
+        writeFully(ByteBuffer.wrap(header.data, 0, header.length), 0);
+    }
+    
+    /**
+     * Encodes the collected block as one frame and appends it to the file.
+     */
+    private void writeFrame() throws IOException {
+        int size = blockFill;
+        bits.reset();
+        
+        // Fixed block size; block size stored below, rate from STREAMINFO, 16 bits, independent channels
+        bits.write(0xFFF8, 16);
+        bits.write(0x70, 8);
+        bits.write(((channels - 1) << 4) | (4 << 1), 8);
+        writeUtf8(frameNumber);
+        bits.write(size - 1, 16);
+        bits.write(FlacFrameHeader.crc8(bits.data, 0, bits.length), 8);
+        
+        for (int c = 0; c < channels; c++) {
+            writeSubframe(block[c], size);
+        }
+        
+        bits.align();
+        bits.write(crc16(bits.data, bits.length), 16);
+        
+        writeFully(ByteBuffer.wrap(bits.data, 0, bits.length), fileBytes);
+        fileBytes += bits.length;
+        minFrameSize = Math.min(minFrameSize, bits.length);
+        maxFrameSize = Math.max(maxFrameSize, bits.length);
+        totalSamples += size;
+        frameNumber++;
+        blockFill = 0;
+    }
+    
+    /**
+     * Codes one channel of a block with the cheapest of a constant, a
+     * fixed predictor or verbatim samples.
+     */
+    private void writeSubframe(int[] x, int n) {
+        boolean constant = true;
+        for (int i = 1; i < n && constant; i++) {
+            constant = x[i] == x[0];
+        }
+        if (constant) {
+            bits.write(0, 8);
+            bits.write(x[0], 16);
+            return;
+        }
+        
+        int order = bestFixedOrder(x, n);
+        computeResidual(x, n, order);
+        int partitionOrder = bestPartitionOrder(n, order);
+        long estimate = riceBits(n, order, partitionOrder);
+        
+        if (order >= n || estimate >= (long) (n - order) * 16) {
+            // Verbatim
+            bits.write(0x02, 8);
+            for (int i = 0; i < n; i++) {
+                bits.write(x[i], 16);
+            }
+            return;
+        }
+        
+        // Fixed predictor: type 001ooo, then warm-up samples and the residual
+        bits.write((0x08 | order) << 1, 8);
+        for (int i = 0; i < order; i++) {
+            bits.write(x[i], 16);
+        }
+        
+        // Rice coding with 4-bit parameters
+        bits.write(0, 2);
+        bits.write(partitionOrder, 4);
+        int partitions = 1 << partitionOrder;
+        int partitionSize = n >> partitionOrder;
+        sumPartitions(n, order, partitionOrder);
+        int index = order;
+        for (int p = 0; p < partitions; p++) {
+            int end = (p + 1) * partitionSize;
+            int count = end - (p == 0 ? order : p * partitionSize);
+            int k = riceParameter(partitionSums[p], count);
+            bits.write(k, 4);
+            for (; index < end; index++) {
+                int r = residual[index];
+                bits.writeRice((r << 1) ^ (r >> 31), k);
+            }
+        }
+    }
+    
+    /**
+     * Picks the fixed predictor order with the smallest residual, by the
+     * sum of absolute values.
+     */
+    private static int bestFixedOrder(int[] x, int n) {
+        if (n <= 4) {
+            return 0;
+        }
+        long e0 = 0;
+        long e1 = 0;
+        long e2 = 0;
+        long e3 = 0;
+        long e4 = 0;
+        for (int i = 4; i < n; i++) {
+            int r0 = x[i];
+            int r1 = r0 - x[i - 1];
+            int r2 = r1 - (x[i - 1] - x[i - 2]);
+            int r3 = r2 - (x[i - 1] - 2 * x[i - 2] + x[i - 3]);
+            int r4 = r3 - (x[i - 1] - 3 * x[i - 2] + 3 * x[i - 3] - x[i - 4]);
+            e0 += Math.abs(r0);
+            e1 += Math.abs(r1);
+            e2 += Math.abs(r2);
+            e3 += Math.abs(r3);
+            e4 += Math.abs(r4);
+        }
+        
+        int order = 0;
+        long best = e0;
+        long[] sums = {e1, e2, e3, e4};
+        for (int i = 0; i < sums.length; i++) {
+            if (sums[i] < best) {
+                best = sums[i];
+                order = i + 1;
+            }
+        }
+        return order;
+    }
+    
+    /**
+     * Fills the residual of a fixed predictor, from index order on.
+     */
+    private void computeResidual(int[] x, int n, int order) {
+        for (int i = order; i < n; i++) {
+            switch (order) {
+                case 0:
+                    residual[i] = x[i];
+                    break;
+                case 1:
+                    residual[i] = x[i] - x[i - 1];
+                    break;
+                case 2:
+                    residual[i] = x[i] - 2 * x[i - 1] + x[i - 2];
+                    break;
+                case 3:
+                    residual[i] = x[i] - 3 * x[i - 1] + 3 * x[i - 2] - x[i - 3];
+                    break;
+                default:
+                    residual[i] = x[i] - 4 * x[i - 1] + 6 * x[i - 2] - 4 * x[i - 3] + x[i - 4];
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * Picks the partition order with the fewest estimated bits.
+     */
+    private int bestPartitionOrder(int n, int order) {
+        int best = 0;
+        long bestBits = Long.MAX_VALUE;
+        for (int p = 0; p <= MAX_PARTITION_ORDER; p++) {
+            if (n % (1 << p) != 0 || (n >> p) <= order) {
+                break;
+            }
+            long estimate = riceBits(n, order, p);
+            if (estimate < bestBits) {
+                bestBits = estimate;
+                best = p;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Estimates the size of the residual with a partition order, assuming
+     * Rice codes spread evenly over each partition.
+     */
+    private long riceBits(int n, int order, int partitionOrder) {
+        sumPartitions(n, order, partitionOrder);
+        int partitions = 1 << partitionOrder;
+        int partitionSize = n >> partitionOrder;
+        long total = 6;
+        for (int p = 0; p < partitions; p++) {
+            int count = partitionSize - (p == 0 ? order : 0);
+            int k = riceParameter(partitionSums[p], count);
+            total += 4 + (long) count * (k + 1) + (partitionSums[p] >> k);
+        }
+        return total;
+    }
+    
+    /**
+     * Sums the zigzag-coded residual of each partition into partitionSums.
+     */
+    private void sumPartitions(int n, int order, int partitionOrder) {
+        int partitions = 1 << partitionOrder;
+        int partitionSize = n >> partitionOrder;
+        for (int p = 0, i = order; p < partitions; p++) {
+            long sum = 0;
+            for (int end = (p + 1) * partitionSize; i < end; i++) {
+                int r = residual[i];
+                sum += (r << 1) ^ (r >> 31);
+            }
+            partitionSums[p] = sum;
+        }
+    }
+    
+    /**
+     * Rice parameter for a partition, from the mean of its coded values.
+     */
+    private static int riceParameter(long sum, int count) {
+        if (count <= 0 || sum < count) {
+            return 0;
+        }
+        int k = 63 - Long.numberOfLeadingZeros(sum / count);
+        return Math.min(k, MAX_RICE_PARAMETER);
+    }
+    
+    /**
+     * Writes a frame number in FLAC's extended UTF-8 coding.
+     */
+    private void writeUtf8(long value) {
+        if (value < 0x80) {
+            bits.write((int) value, 8);
+            return;
+        }
+        int extra = value < 0x800 ? 1 : value < 0x10000 ? 2 : value < 0x200000 ? 3 : value < 0x4000000 ? 4 : 5;
+        int lead = (0xFF00 >> (extra + 1)) & 0xFF;
+        bits.write(lead | (int) (value >>> (6 * extra)), 8);
+        for (int i = extra - 1; i >= 0; i--) {
+            bits.write(0x80 | (int) ((value >>> (6 * i)) & 0x3F), 8);
+        }
+    }
+    
+    /**
+     * Feeds samples to the MD5 of the stream, little-endian as FLAC specifies.
+     */
+    private void updateMd5(short[] samples, int offset, int length) {
+        if (md5 == null) {
+            return;
+        }
+        for (int i = 0, b = 0; i < length; i++, b += 2) {
+            short sample = samples[offset + i];
+            md5Bytes[b] = (byte) sample;
+            md5Bytes[b + 1] = (byte) (sample >> 8);
+        }
+        md5.update(md5Bytes, 0, length * 2);
+    }
+    
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+    
+    /**
+     * Computes the CRC-16 (polynomial 0x8005) that ends every frame.
+     */
+    private static int crc16(byte[] bytes, int length) {
+        int crc = 0;
+        for (int i = 0; i < length; i++) {
+            crc = ((crc << 8) ^ CRC16[((crc >>> 8) ^ bytes[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+    
+    /**
+     * Appends bit fields, most significant bit first, to a byte array.
+     */
+    private static final class BitWriter {
+        byte[] data;
+        int length;
+        private long pending;
+        private int pendingBits;
+        
+        BitWriter(int capacity) {
+            data = new byte[capacity];
+        }
+        
+        void reset() {
+            length = 0;
+            pending = 0;
+            pendingBits = 0;
+        }
+        
+        /**
+         * Writes the low bits of a value.
+         */
+        void write(int value, int count) {
+            pending = (pending << count) | (value & (0xFFFFFFFFL >>> (32 - count)));
+            pendingBits += count;
+            while (pendingBits >= 8) {
+                pendingBits -= 8;
+                if (length == data.length) {
+                    data = Arrays.copyOf(data, data.length * 2);
+                }
+                data[length++] = (byte) (pending >>> pendingBits);
+            }
+        }
+        
+        /**
+         * Writes a value as a unary quotient and k low bits.
+         */
+        void writeRice(int value, int k) {
+            int quotient = value >>> k;
+            while (quotient >= 32) {
+                write(0, 32);
+                quotient -= 32;
+            }
+            write(1, quotient + 1);
+            if (k > 0) {
+                write(value, k);
+            }
+        }
+        
+        /**
+         * Pads with zero bits to a byte boundary.
+         */
+        void align() {
+            if (pendingBits > 0) {
+                write(0, 8 - pendingBits);
+            }
+        }
+    }
+}
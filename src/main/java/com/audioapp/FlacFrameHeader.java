@@ -0,0 +1,183 @@
+package com.audioapp;
+
+/**
+ * Decodes the header that starts every FLAC frame, used to find frames by
+ * sample number without decoding them. Instances are mutable so a single
+ * object can be reused while scanning.
+ */
+final class FlacFrameHeader {
+    
+    // Longest possible header: sync, codes, 7-byte number, 16-bit block
+    // size, 16-bit sample rate and the CRC-8
+    static final int MAX_LENGTH = 16;
+    
+    private long offset;
+    private long sampleNumber;
+    private int blockSize;
+    private int length;
+    
+    /**
+     * Decodes a header into this instance. The header's CRC-8 is checked,
+     * which rules out almost all false sync codes inside audio data.
+     * 
+     * @param bytes Buffer holding the candidate header
+     * @param start Index of the first sync byte
+     * @param end Index after the last valid byte in the buffer
+     * @param position File offset of bytes[start]
+     * @param metadata The stream's metadata, for fixed block sizes and limits
+     * @return true if the bytes hold a valid header of this stream
+     */
+    boolean decode(byte[] bytes, int start, int end, long position, FlacMetadata metadata) {
+        if (end - start < 6 || (bytes[start] & 0xFF) != 0xFF || (bytes[start + 1] & 0xFE) != 0xF8) {
+            return false;
+        }
+        boolean variable = (bytes[start + 1] & 1) != 0;
+        
+        int blockCode = (bytes[start + 2] >>> 4) & 0xF;
+        int rateCode = bytes[start + 2] & 0xF;
+        int channelCode = (bytes[start + 3] >>> 4) & 0xF;
+        int sizeCode = (bytes[start + 3] >>> 1) & 7;
+        
+        // Reject reserved values
+        if (blockCode == 0 || rateCode == 15 || channelCode > 10 || sizeCode == 3
+                || (bytes[start + 3] & 1) != 0) {
+            return false;
+        }
+        
+        // Channels must match the stream, stereo decorrelation modes are two channels
+        int channels = channelCode < 8 ? channelCode + 1 : 2;
+        if (channels != metadata.getChannels()) {
+            return false;
+        }
+        
+        // Frame or sample number in the extended UTF-8 coding
+        int index = start + 4;
+        int first = bytes[index++] & 0xFF;
+        int extra;
+        long number;
+        if (first < 0x80) {
+            extra = 0;
+            number = first;
+        } else if (first >= 0xC0 && first < 0xE0) {
+            extra = 1;
+            number = first & 0x1F;
+        } else if (first >= 0xE0 && first < 0xF0) {
+            extra = 2;
+            number = first & 0x0F;
+        } else if (first >= 0xF0 && first < 0xF8) {
+            extra = 3;
+            number = first & 0x07;
+        } else if (first >= 0xF8 && first < 0xFC) {
+            extra = 4;
+            number = first & 0x03;
+        } else if (first >= 0xFC && first < 0xFE) {
+            extra = 5;
+            number = first & 0x01;
+        } else if (first == 0xFE && variable) {
+            extra = 6;
+            number = 0;
+        } else {
+            return false;
+        }
+        if (index + extra + 5 > end) {
+            return false;
+        }
+        for (int i = 0; i < extra; i++) {
+            int next = bytes[index++] & 0xFF;
+            if ((next & 0xC0) != 0x80) {
+                return false;
+            }
+            number = (number << 6) | (next & 0x3F);
+        }
+        
+        // Block size, possibly stored after the number
+        int block;
+        if (blockCode == 1) {
+            block = 192;
+        } else if (blockCode <= 5) {
+            block = 576 << (blockCode - 2);
+        } else if (blockCode == 6) {
+            block = (bytes[index++] & 0xFF) + 1;
+        } else if (blockCode == 7) {
+            block = (((bytes[index] & 0xFF) << 8) | (bytes[index + 1] & 0xFF)) + 1;
+            index += 2;
+        } else {
+            block = 256 << (blockCode - 8);
+        }
+        if (block > metadata.getMaxBlockSize()) {
+            return false;
+        }
+        
+        // Skip a sample rate stored after the block size
+        if (rateCode == 12) {
+            index++;
+        } else if (rateCode == 13 || rateCode == 14) {
+            index += 2;
+        }
+        
+        if ((bytes[index] & 0xFF) != crc8(bytes, start, index)) {
+            return false;
+        }
+        
+        long sample = variable ? number : number * metadata.getMinBlockSize();
+        if (metadata.getTotalSamples() > 0 && sample >= metadata.getTotalSamples()) {
+            return false;
+        }
+        
+        this.offset = position;
+        this.sampleNumber = sample;
+        this.blockSize = block;
+        this.length = index + 1 - start;
+        return true;
+    }
+    
+    /**
+     * Computes the CRC-8 (polynomial 0x07) that protects a frame header.
+     */
+    static int crc8(byte[] bytes, int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc ^= bytes[i] & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80) != 0 ? ((crc << 1) ^ 0x07) & 0xFF : (crc << 1) & 0xFF;
+            }
+        }
+        return crc;
+    }
+    
+    /**
+     * Gets the file offset of the frame.
+     * 
+     * @return Offset of the sync code
+     */
+    long getOffset() {
+        return offset;
+    }
+    
+    /**
+     * Gets the first sample frame of the frame within the stream.
+     * 
+     * @return Sample number
+     */
+    long getSampleNumber() {
+        return sampleNumber;
+    }
+    
+    /**
+     * Gets the number of sample frames in the frame.
+     * 
+     * @return Block size
+     */
+    int getBlockSize() {
+        return blockSize;
+    }
+    
+    /**
+     * Gets the size of the header itself.
+     * 
+     * @return Length in bytes, including the CRC-8
+     */
+    int getLength() {
+        return length;
+    }
+}
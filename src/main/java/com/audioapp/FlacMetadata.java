@@ -0,0 +1,330 @@
+package com.audioapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Reads the STREAMINFO and SEEKTABLE metadata blocks of a FLAC file and
+ * finds the frame that holds a given sample. The seek table narrows the
+ * search to the span between two seek points; without one, frames are
+ * found by a binary search on frame sync codes, so seeking in a large
+ * file touches a few kilobytes instead of decoding up to the position.
+ */
+public final class FlacMetadata {
+    
+    private static final Logger LOGGER = Logger.getLogger(FlacMetadata.class.getName());
+    
+    // "fLaC" stream marker
+    private static final int MARKER = 0x664C6143;
+    
+    // Metadata block types
+    private static final int STREAMINFO = 0;
+    private static final int SEEKTABLE = 3;
+    
+    // Size of a STREAMINFO block and of one seek point
+    private static final int STREAMINFO_LENGTH = 34;
+    private static final int SEEK_POINT_LENGTH = 18;
+    
+    // Sample number of a placeholder seek point
+    private static final long PLACEHOLDER = 0xFFFFFFFFFFFFFFFFL;
+    
+    // Bytes read at a time while scanning for a sync code
+    private static final int SCAN_WINDOW = 8 * 1024;
+    
+    // The binary search stops once the range is this small, the decoder
+    // skips the few frames left
+    private static final int MIN_SEARCH_BYTES = 64 * 1024;
+    
+    private byte[] streamInfo;
+    private int minBlockSize;
+    private int maxBlockSize;
+    private int maxFrameSize;
+    private int sampleRate;
+    private int channels;
+    private int bitsPerSample;
+    private long totalSamples;
+    private long firstFrameOffset;
+    
+    // Seek points in ascending sample order, offsets relative to the first frame
+    private long[] seekSamples = new long[0];
+    private long[] seekOffsets = new long[0];
+    
+    private FlacMetadata() {
+    }
+    
+    /**
+     * Reads the metadata blocks of a FLAC file.
+     * 
+     * @param file The FLAC file
+     * @return The parsed metadata
+     * @throws IOException If the file cannot be read or is not a FLAC stream
+     */
+    public static FlacMetadata read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Mp3FrameIndex.HeaderReader reader = new Mp3FrameIndex.HeaderReader(channel);
+            
+            long position = Mp3FrameIndex.skipId3v2(reader);
+            if (reader.readInt(position) != MARKER) {
+                throw new IOException("No FLAC stream marker in " + file.getName());
+            }
+            position += 4;
+            
+            FlacMetadata metadata = new FlacMetadata();
+            boolean last = false;
+            while (!last) {
+                int blockHeader = reader.readInt(position);
+                last = (blockHeader & 0x80000000) != 0;
+                int type = (blockHeader >>> 24) & 0x7F;
+                int length = blockHeader & 0xFFFFFF;
+                position += 4;
+                
+                if (position + length > channel.size()) {
+                    throw new IOException("Truncated FLAC metadata in " + file.getName());
+                }
+                if (type == STREAMINFO && length >= STREAMINFO_LENGTH) {
+                    metadata.parseStreamInfo(reader, position);
+                } else if (type == SEEKTABLE) {
+                    metadata.parseSeekTable(reader, position, length / SEEK_POINT_LENGTH);
+                }
+                position += length;
+            }
+            
+            if (metadata.streamInfo == null) {
+                throw new IOException("No STREAMINFO block in " + file.getName());
+            }
+            metadata.firstFrameOffset = position;
+            
+            LOGGER.info("FLAC header of " + file.getName() + ": " + metadata.sampleRate + "Hz, "
+                + metadata.bitsPerSample + " bit, " + metadata.channels + " channel(s), samples: "
+                + metadata.totalSamples + ", seek points: " + metadata.seekSamples.length);
+            
+            return metadata;
+        }
+    }
+    
+    /**
+     * Parses the STREAMINFO block and keeps its bytes for the decoder.
+     */
+    private void parseStreamInfo(Mp3FrameIndex.HeaderReader reader, long offset) throws IOException {
+        streamInfo = new byte[STREAMINFO_LENGTH];
+        for (int i = 0; i < STREAMINFO_LENGTH; i++) {
+            streamInfo[i] = (byte) reader.readByte(offset + i);
+        }
+        
+        minBlockSize = reader.readInt(offset) >>> 16;
+        maxBlockSize = reader.readInt(offset) & 0xFFFF;
+        maxFrameSize = reader.readInt(offset + 6) >>> 8;
+        
+        // 20 bits sample rate, 3 bits channels, 5 bits sample size, 36 bits total samples
+        long packed = ((long) reader.readInt(offset + 10) << 32) | (reader.readInt(offset + 14) & 0xFFFFFFFFL);
+        sampleRate = (int) (packed >>> 44);
+        channels = (int) ((packed >>> 41) & 7) + 1;
+        bitsPerSample = (int) ((packed >>> 36) & 0x1F) + 1;
+        totalSamples = packed & 0xFFFFFFFFFL;
+    }
+    
+    /**
+     * Parses the SEEKTABLE block, dropping placeholder points.
+     */
+    private void parseSeekTable(Mp3FrameIndex.HeaderReader reader, long offset, int points) throws IOException {
+        long[] samples = new long[points];
+        long[] offsets = new long[points];
+        int count = 0;
+        for (int i = 0; i < points; i++) {
+            long point = offset + (long) i * SEEK_POINT_LENGTH;
+            long sample = readLong(reader, point);
+            if (sample == PLACEHOLDER || (count > 0 && sample <= samples[count - 1])) {
+                continue;
+            }
+            samples[count] = sample;
+            offsets[count] = readLong(reader, point + 8);
+            count++;
+        }
+        seekSamples = Arrays.copyOf(samples, count);
+        seekOffsets = Arrays.copyOf(offsets, count);
+    }
+    
+    private static long readLong(Mp3FrameIndex.HeaderReader reader, long offset) throws IOException {
+        return ((long) reader.readInt(offset) << 32) | (reader.readInt(offset + 4) & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * Finds a frame that starts at or shortly before a sample.
+     * 
+     * @param source The mapped FLAC file
+     * @param targetSample Sample frame to seek to
+     * @param result Receives the header of the frame found
+     * @return true if a frame was found
+     */
+    boolean findFrame(MappedAudioSource source, long targetSample, FlacFrameHeader result) {
+        long low = firstFrameOffset;
+        long high = source.size();
+        
+        // The seek table brackets the target between two known frames
+        int point = Arrays.binarySearch(seekSamples, targetSample);
+        if (point < 0) {
+            point = -point - 2;
+        }
+        if (point >= 0) {
+            low = firstFrameOffset + seekOffsets[point];
+        }
+        if (point + 1 < seekOffsets.length) {
+            high = Math.min(high, firstFrameOffset + seekOffsets[point + 1]);
+        }
+        
+        MappedAudioSource.MappedInputStream in = source.newInputStream(low);
+        byte[] window = new byte[SCAN_WINDOW];
+        
+        // Every frame starting at or after high is past the target
+        int minBytes = Math.max(MIN_SEARCH_BYTES, 2 * maxFrameSize);
+        while (high - low > minBytes) {
+            long middle = low + (high - low) / 2;
+            if (scan(in, middle, high, window, result) && result.getSampleNumber() <= targetSample) {
+                low = result.getOffset();
+            } else {
+                high = middle;
+            }
+        }
+        
+        return scan(in, low, low + 1, window, result);
+    }
+    
+    /**
+     * Finds the first valid frame header starting in a byte range.
+     * 
+     * @return true if a header was found, decoded into result
+     */
+    private boolean scan(MappedAudioSource.MappedInputStream in, long from, long limit, byte[] window,
+                         FlacFrameHeader result) {
+        long position = from;
+        while (position < limit) {
+            in.position(position);
+            int read = in.read(window, 0, window.length);
+            if (read <= 0) {
+                return false;
+            }
+            
+            // Headers near the end of a full window are checked in the next one
+            int count = read < window.length ? read : window.length - FlacFrameHeader.MAX_LENGTH;
+            count = (int) Math.min(count, limit - position);
+            for (int i = 0; i < count; i++) {
+                if (window[i] == (byte) 0xFF && result.decode(window, i, read, position + i, this)) {
+                    return true;
+                }
+            }
+            
+            if (read < window.length) {
+                return false;
+            }
+            position += count;
+        }
+        return false;
+    }
+    
+    /**
+     * Builds a minimal stream header, the marker and STREAMINFO only, for a
+     * decoder that starts reading at a frame in the middle of the file.
+     * 
+     * @return Stream header bytes
+     */
+    byte[] getStreamHeader() {
+        byte[] header = new byte[8 + STREAMINFO_LENGTH];
+        header[0] = 'f';
+        header[1] = 'L';
+        header[2] = 'a';
+        header[3] = 'C';
+        header[4] = (byte) 0x80;
+        header[7] = STREAMINFO_LENGTH;
+        System.arraycopy(streamInfo, 0, header, 8, STREAMINFO_LENGTH);
+        return header;
+    }
+    
+    /**
+     * Gets the offset of the first audio frame, after the metadata blocks.
+     * 
+     * @return Byte offset from the start of the file
+     */
+    long getFirstFrameOffset() {
+        return firstFrameOffset;
+    }
+    
+    /**
+     * Gets the smallest block size, which is the block size of every frame
+     * in a fixed block size stream.
+     * 
+     * @return Block size in sample frames
+     */
+    public int getMinBlockSize() {
+        return minBlockSize;
+    }
+    
+    /**
+     * Gets the largest block size.
+     * 
+     * @return Block size in sample frames
+     */
+    public int getMaxBlockSize() {
+        return maxBlockSize;
+    }
+    
+    /**
+     * Gets the sample rate.
+     * 
+     * @return Sample rate in Hz
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+    
+    /**
+     * Gets the number of channels.
+     * 
+     * @return Channel count
+     */
+    public int getChannels() {
+        return channels;
+    }
+    
+    /**
+     * Gets the sample size of the stream.
+     * 
+     * @return Bits per sample
+     */
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+    
+    /**
+     * Gets the length of the stream.
+     * 
+     * @return Total sample frames, or 0 if the encoder did not record it
+     */
+    public long getTotalSamples() {
+        return totalSamples;
+    }
+    
+    /**
+     * Checks whether the file has a usable seek table.
+     * 
+     * @return true if at least one seek point is present
+     */
+    public boolean hasSeekTable() {
+        return seekSamples.length > 0;
+    }
+    
+    /**
+     * Gets the duration of the stream.
+     * 
+     * @return Duration in milliseconds, or 0 if unknown
+     */
+    public int getDurationMillis() {
+        if (sampleRate <= 0) {
+            return 0;
+        }
+        return (int) (totalSamples * 1000 / sampleRate);
+    }
+}
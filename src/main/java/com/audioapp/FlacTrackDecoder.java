@@ -0,0 +1,104 @@
+package com.audioapp;
+
+import org.jflac.ChannelData;
+import org.jflac.FLACDecoder;
+import org.jflac.frame.Frame;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.SequenceInputStream;
+import java.util.logging.Logger;
+
+/**
+ * Decodes one FLAC track from its mapped file into interleaved 16-bit PCM.
+ * The decoder starts at the frame FlacMetadata finds for the start sample,
+ * so opening at any position costs a seek table lookup or a short binary
+ * search rather than decoding everything before it. Samples deeper than
+ * 16 bits are reduced to 16 bits.
+ */
+final class FlacTrackDecoder extends TrackDecoder {
+    
+    private static final Logger LOGGER = Logger.getLogger(FlacTrackDecoder.class.getName());
+    
+    private final FLACDecoder decoder;
+    private final int shift;
+    private short[] samples = new short[0];
+    
+    // Sample frame the next frame starts at, and sample frames still to drop
+    private long nextSample;
+    private long skipFrames;
+    
+    /**
+     * Creates a decoder positioned at a sample of the track.
+     * 
+     * @param source The mapped FLAC file
+     * @param metadata The file's metadata
+     * @param startSample Sample frame to start from
+     * @throws IOException If the stream header cannot be read
+     */
+    FlacTrackDecoder(MappedAudioSource source, FlacMetadata metadata, long startSample) throws IOException {
+        FlacFrameHeader start = new FlacFrameHeader();
+        long offset;
+        if (startSample > 0 && metadata.findFrame(source, startSample, start)) {
+            offset = start.getOffset();
+            nextSample = start.getSampleNumber();
+        } else {
+            if (startSample > 0) {
+                LOGGER.warning("No FLAC frame found for sample " + startSample + ", decoding from the start");
+            }
+            offset = metadata.getFirstFrameOffset();
+            nextSample = 0;
+        }
+        skipFrames = Math.max(0, startSample - nextSample);
+        
+        // The decoder reads the stream header, then frames from the seek point
+        decoder = new FLACDecoder(new SequenceInputStream(
+            new ByteArrayInputStream(metadata.getStreamHeader()), source.newInputStream(offset)));
+        decoder.readMetadata();
+        
+        sampleRate = metadata.getSampleRate();
+        channels = metadata.getChannels();
+        shift = metadata.getBitsPerSample() - 16;
+    }
+    
+    @Override
+    protected boolean decodeChunk() throws IOException {
+        while (true) {
+            Frame frame = decoder.readNextFrame();
+            if (frame == null) {
+                return false;
+            }
+            
+            int frames = frame.header.blockSize;
+            long frameStart = nextSample;
+            nextSample += frames;
+            int skip = (int) Math.min(skipFrames, frames);
+            skipFrames -= skip;
+            if (skip == frames) {
+                continue;
+            }
+            
+            if (samples.length < frames * channels) {
+                samples = new short[frames * channels];
+            }
+            ChannelData[] data = decoder.getChannelData();
+            for (int c = 0; c < channels; c++) {
+                int[] output = data[c].getOutput();
+                for (int i = skip, j = c; i < frames; i++, j += channels) {
+                    samples[j] = (short) (shift >= 0 ? output[i] >> shift : output[i] << -shift);
+                }
+            }
+            
+            buffer = samples;
+            offset = 0;
+            length = (frames - skip) * channels;
+            position = frameStart + skip;
+            return true;
+        }
+    }
+    
+    @Override
+    void close() {
+        // The stream is a view of the mapped file, nothing to release
+    }
+}
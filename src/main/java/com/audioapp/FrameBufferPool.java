@@ -0,0 +1,167 @@
+package com.audioapp;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Keeps video frame buffers for reuse across resizes and file loads.
+ * Requests are rounded up to a size class, four classes per doubling, so
+ * a buffer is at most a quarter larger than asked for and a slightly
+ * different video size still finds one. Native buffers are aligned for
+ * libvlc; heap buffers back the painted image. Released buffers are kept
+ * up to a byte limit, beyond that they are left to the garbage collector.
+ */
+final class FrameBufferPool {
+    
+    private static final Logger LOGGER = Logger.getLogger(FrameBufferPool.class.getName());
+    
+    // Alignment libvlc expects for picture planes
+    private static final int ALIGNMENT = 32;
+    
+    // Size classes per doubling
+    private static final int CLASSES_PER_OCTAVE = 4;
+    
+    // Bytes kept in released buffers, enough for two sets of 4K frames
+    private static final long MAX_RETAINED_BYTES = 256L * 1024 * 1024;
+    
+    private final Map<Integer, ArrayDeque<ByteBuffer>> nativeBuffers = new HashMap<>();
+    private final Map<Integer, ArrayDeque<int[]>> heapBuffers = new HashMap<>();
+    private long retainedBytes;
+    private long hits;
+    private long misses;
+    
+    /**
+     * Gets a native buffer in native byte order, aligned for libvlc.
+     * 
+     * @param bytes Minimum capacity in bytes
+     * @return A buffer of at least that capacity, positioned at 0
+     */
+    synchronized ByteBuffer acquireNative(int bytes) {
+        int size = sizeClass(bytes);
+        ArrayDeque<ByteBuffer> free = nativeBuffers.get(size);
+        if (free != null && !free.isEmpty()) {
+            hits++;
+            retainedBytes -= size;
+            ByteBuffer buffer = free.pop();
+            buffer.clear();
+            return buffer;
+        }
+        misses++;
+        return allocateAligned(size);
+    }
+    
+    /**
+     * Returns a native buffer for reuse.
+     * 
+     * @param buffer A buffer from {@link #acquireNative(int)}
+     */
+    synchronized void releaseNative(ByteBuffer buffer) {
+        int size = buffer.capacity();
+        if (retainedBytes + size <= MAX_RETAINED_BYTES) {
+            nativeBuffers.computeIfAbsent(size, k -> new ArrayDeque<>()).push(buffer);
+            retainedBytes += size;
+        }
+    }
+    
+    /**
+     * Gets a heap pixel buffer. Its contents are undefined.
+     * 
+     * @param pixels Minimum length in pixels
+     * @return An array of at least that length
+     */
+    synchronized int[] acquirePixels(int pixels) {
+        int size = sizeClass(pixels * 4);
+        ArrayDeque<int[]> free = heapBuffers.get(size);
+        if (free != null && !free.isEmpty()) {
+            hits++;
+            retainedBytes -= size;
+            return free.pop();
+        }
+        misses++;
+        return new int[size / 4];
+    }
+    
+    /**
+     * Returns a heap pixel buffer for reuse.
+     * 
+     * @param buffer An array from {@link #acquirePixels(int)}
+     */
+    synchronized void releasePixels(int[] buffer) {
+        int size = buffer.length * 4;
+        if (retainedBytes + size <= MAX_RETAINED_BYTES) {
+            heapBuffers.computeIfAbsent(size, k -> new ArrayDeque<>()).push(buffer);
+            retainedBytes += size;
+        }
+    }
+    
+    /**
+     * Gets the number of requests served from released buffers.
+     * 
+     * @return Pool hits
+     */
+    synchronized long getHits() {
+        return hits;
+    }
+    
+    /**
+     * Gets the number of requests that allocated a new buffer.
+     * 
+     * @return Pool misses
+     */
+    synchronized long getMisses() {
+        return misses;
+    }
+    
+    /**
+     * Gets the memory held in released buffers.
+     * 
+     * @return Retained bytes
+     */
+    synchronized long getRetainedBytes() {
+        return retainedBytes;
+    }
+    
+    /**
+     * Drops all released buffers.
+     */
+    synchronized void clear() {
+        nativeBuffers.clear();
+        heapBuffers.clear();
+        retainedBytes = 0;
+        LOGGER.fine("Frame buffer pool cleared");
+    }
+    
+    /**
+     * Rounds a size up to its class: a power of two times 1, 1.25, 1.5
+     * or 1.75, in multiples of the alignment.
+     */
+    private static int sizeClass(int bytes) {
+        int size = Math.max(ALIGNMENT, bytes);
+        int octave = Integer.highestOneBit(size - 1);
+        if (octave < ALIGNMENT * CLASSES_PER_OCTAVE) {
+            return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+        }
+        int step = octave / CLASSES_PER_OCTAVE;
+        return (size + step - 1) / step * step;
+    }
+    
+    /**
+     * Allocates a direct buffer in native byte order whose start is aligned
+     * for libvlc.
+     */
+    private static ByteBuffer allocateAligned(int size) {
+        ByteBuffer raw = ByteBuffer.allocateDirect(size + ALIGNMENT);
+        long address = Pointer.nativeValue(Native.getDirectBufferPointer(raw));
+        int offset = (int) ((ALIGNMENT - address % ALIGNMENT) % ALIGNMENT);
+        raw.position(offset);
+        raw.limit(offset + size);
+        return raw.slice().order(ByteOrder.nativeOrder());
+    }
+}
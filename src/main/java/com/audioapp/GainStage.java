@@ -0,0 +1,115 @@
+package com.audioapp;
+
+/**
+ * Software volume control applied in place to interleaved 16-bit PCM.
+ * Gain changes are smoothed per sample frame with a one-pole ramp so
+ * moving the volume slider never produces zipper noise or clicks.
+ * Processing allocates nothing and skips the work entirely at unity gain.
+ */
+public final class GainStage {
+    
+    // Time constant of the gain ramp
+    private static final double SMOOTHING_SECONDS = 0.010;
+    
+    // Below this difference the ramp snaps to the target
+    private static final float SETTLE_EPSILON = 1e-4f;
+    
+    // Written by the UI thread, read by the audio thread
+    private volatile float targetGain = 1.0f;
+    
+    // Audio thread state
+    private float currentGain = 1.0f;
+    private float smoothing = 1.0f;
+    
+    /**
+     * Prepares the ramp for a sample rate. Called when the output opens.
+     * 
+     * @param sampleRate Output sample rate in Hz
+     */
+    public void prepare(int sampleRate) {
+        smoothing = (float) (1.0 - Math.exp(-1.0 / (SMOOTHING_SECONDS * sampleRate)));
+    }
+    
+    /**
+     * Sets the volume. Uses a squared curve so the slider feels even.
+     * 
+     * @param volume Volume level from 0 (mute) to 100 (max)
+     */
+    public void setVolume(int volume) {
+        float linear = Math.max(0, Math.min(100, volume)) / 100.0f;
+        targetGain = linear * linear;
+    }
+    
+    /**
+     * Gets the gain the stage is moving towards.
+     * 
+     * @return Linear gain factor
+     */
+    public float getTargetGain() {
+        return targetGain;
+    }
+    
+    /**
+     * Applies the gain in place.
+     * 
+     * @param samples Interleaved samples
+     * @param offset Index of the first sample
+     * @param length Number of samples, a multiple of the channel count
+     * @param channels Number of interleaved channels
+     */
+    public void process(short[] samples, int offset, int length, int channels) {
+        float target = targetGain;
+        float gain = currentGain;
+        int end = offset + length;
+        
+        if (Math.abs(target - gain) < SETTLE_EPSILON) {
+            currentGain = target;
+            if (target == 1.0f) {
+                return;
+            }
+            for (int i = offset; i < end; i++) {
+                samples[i] = clip(samples[i] * target);
+            }
+            return;
+        }
+        
+        // Ramp towards the target once per sample frame
+        for (int i = offset; i < end; i += channels) {
+            gain += (target - gain) * smoothing;
+            for (int c = 0; c < channels; c++) {
+                samples[i + c] = clip(samples[i + c] * gain);
+            }
+        }
+        currentGain = gain;
+    }
+    
+    /**
+     * Rounds and saturates a sample to the 16-bit range. Shared by every
+     * stage that turns its arithmetic back into 16-bit PCM.
+     */
+    static short clip(float value) {
+        int rounded = Math.round(value);
+        if (rounded > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        }
+        if (rounded < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) rounded;
+    }
+    
+    /**
+     * Rounds and saturates a sample computed in double precision to the
+     * 16-bit range.
+     */
+    static short clip(double value) {
+        long rounded = Math.round(value);
+        if (rounded > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        }
+        if (rounded < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) rounded;
+    }
+}
@@ -0,0 +1,153 @@
+package com.audioapp;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams a track through the Java Sound API, for the formats that have a
+ * service provider on the classpath, such as WAV and AIFF from the JDK.
+ * FLAC has its own seeking decoder. The stream is converted to 16-bit
+ * signed little-endian PCM and read in fixed chunks, so memory use does
+ * not depend on file length.
+ */
+final class JavaSoundTrackDecoder extends TrackDecoder {
+    
+    private static final Logger LOGGER = Logger.getLogger(JavaSoundTrackDecoder.class.getName());
+    
+    // Sample frames read per chunk
+    private static final int CHUNK_FRAMES = 4096;
+    
+    private final AudioInputStream stream;
+    private final int frameSize;
+    private final byte[] bytes;
+    private final short[] samples;
+    
+    // Bytes of an incomplete sample frame left over from the previous read
+    private int pending = 0;
+    
+    // Sample frame the next chunk starts at
+    private long nextFrame;
+    
+    /**
+     * Opens a file and positions it at a playback position.
+     * 
+     * @param file The audio file
+     * @param startMillis Position in milliseconds to start from
+     * @throws IOException If the file cannot be read
+     * @throws UnsupportedAudioFileException If no provider understands the file
+     */
+    JavaSoundTrackDecoder(File file, int startMillis) throws IOException, UnsupportedAudioFileException {
+        stream = openPcm(file);
+        AudioFormat format = stream.getFormat();
+        sampleRate = (int) format.getSampleRate();
+        channels = format.getChannels();
+        frameSize = format.getFrameSize();
+        bytes = new byte[CHUNK_FRAMES * frameSize];
+        samples = new short[CHUNK_FRAMES * channels];
+        
+        nextFrame = (long) startMillis * sampleRate / 1000;
+        skipFrames(nextFrame);
+    }
+    
+    /**
+     * Opens a file as a stream of 16-bit signed little-endian PCM.
+     * 
+     * @param file The audio file
+     * @return The converted stream
+     * @throws IOException If the file cannot be read
+     * @throws UnsupportedAudioFileException If no provider understands the file
+     */
+    static AudioInputStream openPcm(File file) throws IOException, UnsupportedAudioFileException {
+        AudioInputStream source = AudioSystem.getAudioInputStream(file);
+        AudioFormat base = source.getFormat();
+        AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, base.getSampleRate(), 16,
+                base.getChannels(), base.getChannels() * 2, base.getSampleRate(), false);
+        if (base.matches(pcm)) {
+            return source;
+        }
+        return AudioSystem.getAudioInputStream(pcm, source);
+    }
+    
+    /**
+     * Reads the duration of a file from its header.
+     * 
+     * @param file The audio file
+     * @return Duration in milliseconds, or 0 if the header does not say
+     */
+    static int readDurationMillis(File file) {
+        try {
+            AudioFileFormat fileFormat = AudioSystem.getAudioFileFormat(file);
+            long frames = fileFormat.getFrameLength();
+            float rate = fileFormat.getFormat().getSampleRate();
+            if (frames > 0 && rate > 0) {
+                return (int) (frames * 1000 / rate);
+            }
+        } catch (UnsupportedAudioFileException | IOException e) {
+            LOGGER.log(Level.WARNING, "Could not read the format of " + file.getName(), e);
+        }
+        return 0;
+    }
+    
+    /**
+     * Skips whole sample frames of the converted stream.
+     */
+    private void skipFrames(long frames) throws IOException {
+        long remaining = frames * frameSize;
+        while (remaining > 0) {
+            long skipped = stream.skip(remaining);
+            if (skipped <= 0) {
+                // Some converters cannot skip, read through instead
+                int read = stream.read(bytes, 0, (int) Math.min(bytes.length, remaining));
+                if (read < 0) {
+                    return;
+                }
+                skipped = read;
+            }
+            remaining -= skipped;
+        }
+    }
+    
+    @Override
+    protected boolean decodeChunk() throws IOException {
+        int filled = pending;
+        while (filled < frameSize) {
+            int read = stream.read(bytes, filled, bytes.length - filled);
+            if (read < 0) {
+                return false;
+            }
+            filled += read;
+        }
+        
+        // Convert whole frames, keep the remainder for the next chunk
+        int whole = filled - filled % frameSize;
+        int count = whole / 2;
+        for (int i = 0, b = 0; i < count; i++, b += 2) {
+            samples[i] = (short) ((bytes[b] & 0xFF) | (bytes[b + 1] << 8));
+        }
+        pending = filled - whole;
+        System.arraycopy(bytes, whole, bytes, 0, pending);
+        
+        buffer = samples;
+        offset = 0;
+        length = count;
+        position = nextFrame;
+        nextFrame += count / channels;
+        return true;
+    }
+    
+    @Override
+    void close() {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Error closing audio stream", e);
+        }
+    }
+}
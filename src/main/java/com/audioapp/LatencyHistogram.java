@@ -0,0 +1,140 @@
+package com.audioapp;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations with a fixed relative precision, in the manner
+ * of HdrHistogram. Each power of two is split into 32 linear buckets, so
+ * a recorded value is known to within about 3% from a nanosecond up to a
+ * minute, in a fixed table of 1024 counters. Recording is a few atomic
+ * adds and never allocates; any thread may read while another records.
+ */
+public final class LatencyHistogram {
+    
+    // Linear buckets per power of two, as a bit count
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    
+    // Values above this are counted in the last bucket, about 68 seconds
+    private static final long MAX_VALUE = (1L << 36) - 1;
+    
+    private static final int BUCKETS = (36 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    
+    /**
+     * Records a duration.
+     * 
+     * @param nanos Duration in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(MAX_VALUE, nanos));
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+    
+    /**
+     * Gets the number of recorded values.
+     * 
+     * @return Value count
+     */
+    public long getCount() {
+        return count.get();
+    }
+    
+    /**
+     * Gets the mean of the recorded values.
+     * 
+     * @return Mean in nanoseconds, 0 if nothing was recorded
+     */
+    public double getMean() {
+        long n = count.get();
+        return n > 0 ? (double) sum.get() / n : 0;
+    }
+    
+    /**
+     * Gets the largest recorded value.
+     * 
+     * @return Maximum in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+    
+    /**
+     * Gets the value below which a share of the recorded values fall.
+     * 
+     * @param percentile Percentile from 0 to 100
+     * @return Upper edge of the bucket holding that percentile, in
+     *         nanoseconds, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        
+        long target = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(upperEdgeOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+    
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "p50 %.2fms, p99 %.2fms, max %.2fms (%d)",
+                getValueAtPercentile(50) / 1e6, getValueAtPercentile(99) / 1e6, getMax() / 1e6, getCount());
+    }
+    
+    /**
+     * Finds the bucket of a value: values below SUB_BUCKETS map to
+     * themselves, larger ones to their power of two and the top bits
+     * below the leading one.
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) - SUB_BUCKETS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + sub;
+    }
+    
+    /**
+     * Largest value that falls into a bucket.
+     */
+    private static long upperEdgeOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long low = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+        return low + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,273 @@
+package com.audioapp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Memory-mapped view of an audio file that is opened once and shared by
+ * every playback start, seek and resume. Streams handed out by this class
+ * are positioned by moving a pointer, so no file is reopened and no bytes
+ * are read just to be skipped.
+ */
+public final class MappedAudioSource implements Closeable {
+    
+    private static final Logger LOGGER = Logger.getLogger(MappedAudioSource.class.getName());
+    
+    // A single mapping is limited to 2 GB, larger files are mapped in segments
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    
+    private final File file;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long size;
+    
+    private MappedAudioSource(File file, FileChannel channel, MappedByteBuffer[] segments, long size) {
+        this.file = file;
+        this.channel = channel;
+        this.segments = segments;
+        this.size = size;
+    }
+    
+    /**
+     * Opens and maps a file read-only.
+     * 
+     * @param file The audio file to map
+     * @return The mapped source
+     * @throws IOException If the file cannot be opened or mapped
+     */
+    public static MappedAudioSource open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            int count = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+            MappedByteBuffer[] segments = new MappedByteBuffer[Math.max(1, count)];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+            }
+            if (count == 0) {
+                segments[0] = channel.map(FileChannel.MapMode.READ_ONLY, 0, 0);
+            }
+            
+            LOGGER.info("Mapped " + file.getName() + " (" + size + " bytes in " + segments.length + " segment(s))");
+            return new MappedAudioSource(file, channel, segments, size);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Gets the file backing this source.
+     * 
+     * @return The mapped file
+     */
+    public File getFile() {
+        return file;
+    }
+    
+    /**
+     * Gets the size of the mapped file.
+     * 
+     * @return Size in bytes
+     */
+    public long size() {
+        return size;
+    }
+    
+    /**
+     * Creates a stream over the mapping starting at the given offset.
+     * Creating a stream only duplicates buffer pointers.
+     * 
+     * @param position Byte offset to start reading from
+     * @return A new positionable stream
+     */
+    public MappedInputStream newInputStream(long position) {
+        MappedInputStream stream = new MappedInputStream();
+        stream.position(position);
+        return stream;
+    }
+    
+    /**
+     * Closes the underlying channel. The mapping is released once all
+     * streams over it are unreachable.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    /**
+     * Input stream over the mapping whose position can be moved freely.
+     * Closing the stream does not close the source.
+     */
+    public final class MappedInputStream extends InputStream {
+        
+        private final ByteBuffer[] views = new ByteBuffer[segments.length];
+        
+        // 16-bit views of each segment, from an even and from an odd byte,
+        // made on first use so reading samples allocates nothing per chunk
+        private final ShortBuffer[] shortViews = new ShortBuffer[segments.length * 2];
+        private ByteOrder shortOrder;
+        
+        private long position;
+        private long mark;
+        
+        private MappedInputStream() {
+            for (int i = 0; i < views.length; i++) {
+                views[i] = segments[i].duplicate();
+            }
+        }
+        
+        /**
+         * Gets the current read position.
+         * 
+         * @return Byte offset from the start of the file
+         */
+        public long position() {
+            return position;
+        }
+        
+        /**
+         * Moves the read position.
+         * 
+         * @param newPosition Byte offset from the start of the file
+         */
+        public void position(long newPosition) {
+            position = Math.max(0, Math.min(newPosition, size));
+        }
+        
+        @Override
+        public int read() {
+            if (position >= size) {
+                return -1;
+            }
+            ByteBuffer view = views[(int) (position >>> SEGMENT_SHIFT)];
+            int value = view.get((int) (position & (SEGMENT_SIZE - 1))) & 0xFF;
+            position++;
+            return value;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= size) {
+                return -1;
+            }
+            
+            int total = 0;
+            while (total < length && position < size) {
+                ByteBuffer view = views[(int) (position >>> SEGMENT_SHIFT)];
+                view.position((int) (position & (SEGMENT_SIZE - 1)));
+                int chunk = Math.min(length - total, view.remaining());
+                view.get(buffer, offset + total, chunk);
+                total += chunk;
+                position += chunk;
+            }
+            return total;
+        }
+        
+        /**
+         * Reads 16-bit samples with a bulk copy from the mapping, without
+         * going through a byte array.
+         * 
+         * @param dest Destination array
+         * @param offset Index of the first sample to fill
+         * @param count Maximum number of samples to read
+         * @param order Byte order of the samples in the file
+         * @return Number of samples read, or -1 at the end of the file
+         */
+        public int readShorts(short[] dest, int offset, int count, ByteOrder order) {
+            if (size - position < 2) {
+                return count == 0 ? 0 : -1;
+            }
+            
+            int total = 0;
+            while (total < count && size - position >= 2) {
+                ByteBuffer view = views[(int) (position >>> SEGMENT_SHIFT)];
+                int index = (int) (position & (SEGMENT_SIZE - 1));
+                int inView = (view.capacity() - index) / 2;
+                if (inView == 0) {
+                    // The sample straddles two segments
+                    int first = read();
+                    int second = read();
+                    dest[offset + total++] = (short) (order == ByteOrder.BIG_ENDIAN
+                            ? (first << 8) | second : (second << 8) | first);
+                    continue;
+                }
+                
+                int chunk = Math.min(count - total, inView);
+                ShortBuffer samples = shortView((int) (position >>> SEGMENT_SHIFT), index & 1, order);
+                samples.position(index >>> 1);
+                samples.get(dest, offset + total, chunk);
+                total += chunk;
+                position += chunk * 2L;
+            }
+            return total;
+        }
+        
+        /**
+         * Gets the 16-bit view of a segment whose samples start at an even
+         * or an odd byte, creating it on first use or when the byte order changes.
+         */
+        private ShortBuffer shortView(int segment, int parity, ByteOrder order) {
+            if (order != shortOrder) {
+                Arrays.fill(shortViews, null);
+                shortOrder = order;
+            }
+            ShortBuffer samples = shortViews[segment * 2 + parity];
+            if (samples == null) {
+                ByteBuffer bytes = segments[segment].duplicate();
+                bytes.position(parity);
+                samples = bytes.slice().order(order).asShortBuffer();
+                shortViews[segment * 2 + parity] = samples;
+            }
+            return samples;
+        }
+        
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, size - position));
+            position += skipped;
+            return skipped;
+        }
+        
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, size - position);
+        }
+        
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+        
+        @Override
+        public void mark(int readLimit) {
+            mark = position;
+        }
+        
+        @Override
+        public void reset() {
+            position = mark;
+        }
+        
+        @Override
+        public void close() {
+            // The mapping is owned by the source
+        }
+    }
+}
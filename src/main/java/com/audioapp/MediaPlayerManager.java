@@ -6,18 +6,9 @@ import uk.co.caprica.vlcj.player.base.MediaPlayer;
 import uk.co.caprica.vlcj.player.base.MediaPlayerEventAdapter;
 import uk.co.caprica.vlcj.player.embedded.EmbeddedMediaPlayer;
 import uk.co.caprica.vlcj.player.embedded.videosurface.VideoSurface;
-import uk.co.caprica.vlcj.player.embedded.videosurface.CallbackVideoSurface;
-import uk.co.caprica.vlcj.player.embedded.videosurface.callback.BufferFormatCallback;
-import uk.co.caprica.vlcj.player.embedded.videosurface.callback.RenderCallback;
-import uk.co.caprica.vlcj.player.embedded.videosurface.callback.format.RV32BufferFormat;
-import uk.co.caprica.vlcj.player.embedded.videosurface.callback.BufferFormat;
 
 import java.awt.Canvas;
-import java.awt.Graphics;
-import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferInt;
 import java.io.File;
-import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 import java.util.Arrays;
@@ -43,9 +34,11 @@ public class MediaPlayerManager {
     private String currentMediaPath;
     private List<String> videoExtensions = Arrays.asList("mp4", "avi", "mkv", "mov", "wmv", "flv");
     
-    // For direct rendering
-    private BufferedImage frameImage;
-    private int[] imageBuffer;
+    // Playback speed, kept across files
+    private float playbackRate = 1.0f;
+    
+    // For direct rendering, frames are painted off VLC's decoder thread
+    private final VideoFrameRenderer frameRenderer = new VideoFrameRenderer();
     
     // List of common video file extensions
     private static final List<String> VIDEO_EXTENSIONS = Arrays.asList(
@@ -196,7 +189,8 @@ public class MediaPlayerManager {
     
     /**
      * Sets up direct rendering for video display on macOS.
-     * Uses callback-based rendering to a BufferedImage that will be drawn to the canvas.
+     * Uses callback-based rendering: VLC decodes each frame into a free native
+     * buffer, a render thread copies the newest frame once and draws it to the canvas.
      * 
      * @param canvas The canvas to render video on
      */
@@ -207,59 +201,13 @@ public class MediaPlayerManager {
         }
         
         try {
-            // Initial image with default size
-            int width = Math.max(640, canvas.getWidth());
-            int height = Math.max(480, canvas.getHeight());
-            
-            frameImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-            imageBuffer = ((DataBufferInt) frameImage.getRaster().getDataBuffer()).getData();
-            
-            // Setup callbacks
-            BufferFormatCallback bufferFormatCallback = new BufferFormatCallback() {
-                @Override
-                public BufferFormat getBufferFormat(int sourceWidth, int sourceHeight) {
-                    // Resize image if the video dimensions change
-                    if (sourceWidth > 0 && sourceHeight > 0 && 
-                        (frameImage.getWidth() != sourceWidth || frameImage.getHeight() != sourceHeight)) {
-                        
-                        LOGGER.info("Resizing video buffer to " + sourceWidth + "x" + sourceHeight);
-                        frameImage = new BufferedImage(sourceWidth, sourceHeight, BufferedImage.TYPE_INT_RGB);
-                        imageBuffer = ((DataBufferInt) frameImage.getRaster().getDataBuffer()).getData();
-                    }
-                    return new RV32BufferFormat(sourceWidth, sourceHeight);
-                }
-                
-                @Override
-                public void allocatedBuffers(ByteBuffer[] buffers) {
-                    // Required but can be empty
-                }
-            };
-            
-            RenderCallback renderCallback = new RenderCallback() {
-                @Override
-                public void display(MediaPlayer mediaPlayer, ByteBuffer[] nativeBuffers, BufferFormat bufferFormat) {
-                    if (nativeBuffers.length == 0 || nativeBuffers[0] == null) {
-                        return;
-                    }
-                    
-                    // Copy the video data from native buffer to the image
-                    ByteBuffer byteBuffer = nativeBuffers[0];
-                    byteBuffer.asIntBuffer().get(imageBuffer, 0, imageBuffer.length);
-                    
-                    // Redraw the canvas with the new frame
-                    if (canvas.isDisplayable() && canvas.isVisible()) {
-                        Graphics g = canvas.getGraphics();
-                        if (g != null) {
-                            g.drawImage(frameImage, 0, 0, canvas.getWidth(), canvas.getHeight(), null);
-                            g.dispose();
-                        }
-                    }
-                }
-            };
+            frameRenderer.setCanvas(canvas);
+            frameRenderer.setRenegotiation(this::restartVideoOutput);
+            frameRenderer.start();
             
-            // Create a callback surface and set it on the media player
-            CallbackVideoSurface videoSurface = factory.videoSurfaces().newVideoSurface(
-                bufferFormatCallback, renderCallback, true);
+            // VLC decodes into the renderer's buffers, its render thread paints them.
+            // The surface and its buffers are reused from file to file.
+            VideoSurface videoSurface = frameRenderer.getVideoSurface();
             
             mediaPlayer.videoSurface().set(videoSurface);
             this.vlcVideoSurface = videoSurface;
@@ -270,6 +218,83 @@ public class MediaPlayerManager {
         }
     }
     
+    /**
+     * Makes VLC negotiate the video format again, so a canvas that became
+     * much smaller gets frames of its new size. libvlc has no call that
+     * only renegotiates the output, so the video track is reselected; that
+     * recreates the decoder, and the picture holds still until the next
+     * keyframe. Runs on vlcj's own thread.
+     */
+    private void restartVideoOutput() {
+        EmbeddedMediaPlayer player = mediaPlayer;
+        if (player == null) {
+            return;
+        }
+        
+        player.submit(() -> {
+            if (!player.status().isPlaying()) {
+                return;
+            }
+            int track = player.video().track();
+            if (track >= 0) {
+                player.video().setTrack(-1);
+                player.video().setTrack(track);
+            }
+        });
+    }
+    
+    /**
+     * Sets whether video is decoded at the size of the canvas. VLC then
+     * scales each frame while decoding, instead of the full-size frame
+     * being copied and scaled down in Java. On by default. Shrinking the
+     * window a lot during playback renegotiates the size, which freezes
+     * the picture until the next keyframe; enlarging it takes effect with
+     * the next file.
+     * 
+     * @param adaptive true to decode at the canvas size, false for the source size
+     */
+    public void setAdaptiveVideoSize(boolean adaptive) {
+        frameRenderer.setAdaptive(adaptive);
+    }
+    
+    /**
+     * Checks whether video is decoded at the size of the canvas.
+     * 
+     * @return true if adaptive sizing is on
+     */
+    public boolean isAdaptiveVideoSize() {
+        return frameRenderer.isAdaptive();
+    }
+    
+    /**
+     * Gets the counters and timings of video rendering: frames received,
+     * painted and dropped, and histograms of frame interval, copy and
+     * paint time.
+     * 
+     * @return The render metrics
+     */
+    public RenderMetrics getRenderMetrics() {
+        return frameRenderer.getMetrics();
+    }
+    
+    /**
+     * Shows or hides the render metrics as an overlay on the video.
+     * 
+     * @param visible true to draw the overlay
+     */
+    public void setRenderStatsVisible(boolean visible) {
+        frameRenderer.setOverlayVisible(visible);
+    }
+    
+    /**
+     * Checks whether the render metrics overlay is shown.
+     * 
+     * @return true if the overlay is drawn
+     */
+    public boolean isRenderStatsVisible() {
+        return frameRenderer.isOverlayVisible();
+    }
+    
     /**
      * Checks if the media player is available (VLC libraries loaded).
      * 
@@ -354,6 +379,9 @@ public class MediaPlayerManager {
                 }
                 
                 mediaPlayer.controls().play();
+                if (playbackRate != 1.0f) {
+                    mediaPlayer.controls().setRate(playbackRate);
+                }
                 if (eventListener != null) {
                     eventListener.onPlay();
                 }
@@ -430,6 +458,24 @@ public class MediaPlayerManager {
         }
     }
     
+    /**
+     * Sets the playback speed. VLC's default audio filters stretch the
+     * sound in time, so the pitch stays the same.
+     * 
+     * @param rate Speed from 0.5 to 2.0, 1.0 is normal
+     */
+    public void setPlaybackRate(float rate) {
+        playbackRate = rate;
+        if (!isMediaPlayerAvailable()) {
+            return;
+        }
+        
+        if (mediaPlayer != null) {
+            mediaPlayer.controls().setRate(rate);
+            LOGGER.info("Playback rate set to: " + rate + "x");
+        }
+    }
+    
     /**
      * Gets the total duration of the current media in milliseconds.
      * 
@@ -507,6 +553,11 @@ public class MediaPlayerManager {
             macVideoWindow = null;
         }
         
+        frameRenderer.release();
+        if (frameRenderer.getMetrics().getFramesReceived() > 0) {
+            LOGGER.info("Video rendering: " + frameRenderer.getMetrics());
+        }
+        
         if (mediaPlayer != null) {
             mediaPlayer.release();
             mediaPlayer = null;
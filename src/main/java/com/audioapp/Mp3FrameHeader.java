@@ -0,0 +1,159 @@
+package com.audioapp;
+
+/**
+ * Decodes the 32-bit header word that starts every MPEG audio frame.
+ * Instances are mutable so a single object can be reused while scanning
+ * thousands of frames without allocating.
+ */
+final class Mp3FrameHeader {
+    
+    // MPEG version identifiers as encoded in the header
+    static final int MPEG25 = 0;
+    static final int MPEG2 = 2;
+    static final int MPEG1 = 3;
+    
+    // Channel mode for single channel (mono) streams
+    static final int MODE_MONO = 3;
+    
+    // Bitrates in kbps indexed by [row][bitrate index]
+    private static final int[][] BITRATES = {
+        {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448}, // MPEG1 Layer I
+        {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},    // MPEG1 Layer II
+        {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},     // MPEG1 Layer III
+        {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},    // MPEG2/2.5 Layer I
+        {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}          // MPEG2/2.5 Layer II/III
+    };
+    
+    // Sample rates indexed by [version][sample rate index]
+    private static final int[][] SAMPLE_RATES = {
+        {11025, 12000, 8000},  // MPEG2.5
+        {0, 0, 0},             // reserved
+        {22050, 24000, 16000}, // MPEG2
+        {44100, 48000, 32000}  // MPEG1
+    };
+    
+    private int version;
+    private int layer;
+    private int bitrate;
+    private int sampleRate;
+    private int channelMode;
+    private int frameLength;
+    private int samplesPerFrame;
+    
+    /**
+     * Decodes a header word into this instance.
+     *
+     * @param word The four header bytes in big-endian order
+     * @return true if the word is a valid, supported frame header
+     */
+    boolean decode(int word) {
+        if ((word & 0xFFE00000) != 0xFFE00000) {
+            return false;
+        }
+        
+        int versionBits = (word >>> 19) & 3;
+        int layerBits = (word >>> 17) & 3;
+        int bitrateIndex = (word >>> 12) & 0xF;
+        int sampleRateIndex = (word >>> 10) & 3;
+        int padding = (word >>> 9) & 1;
+        
+        // Reject reserved values and free-format streams
+        if (versionBits == 1 || layerBits == 0 || bitrateIndex == 0 || bitrateIndex == 15
+                || sampleRateIndex == 3) {
+            return false;
+        }
+        
+        version = versionBits;
+        layer = 4 - layerBits;
+        sampleRate = SAMPLE_RATES[version][sampleRateIndex];
+        channelMode = (word >>> 6) & 3;
+        
+        int row;
+        if (version == MPEG1) {
+            row = layer - 1;
+        } else {
+            row = layer == 1 ? 3 : 4;
+        }
+        bitrate = BITRATES[row][bitrateIndex] * 1000;
+        
+        if (layer == 1) {
+            samplesPerFrame = 384;
+            frameLength = (12 * bitrate / sampleRate + padding) * 4;
+        } else if (layer == 2 || version == MPEG1) {
+            samplesPerFrame = 1152;
+            frameLength = 144 * bitrate / sampleRate + padding;
+        } else {
+            samplesPerFrame = 576;
+            frameLength = 72 * bitrate / sampleRate + padding;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Checks whether another decoded header belongs to the same stream.
+     * Bitrate and padding may change between frames, the rest may not.
+     *
+     * @param other The header to compare with
+     * @return true if both headers describe the same stream layout
+     */
+    boolean isCompatibleWith(Mp3FrameHeader other) {
+        return version == other.version && layer == other.layer && sampleRate == other.sampleRate;
+    }
+    
+    /**
+     * Copies the decoded fields of another header into this instance.
+     *
+     * @param other The header to copy
+     */
+    void copyFrom(Mp3FrameHeader other) {
+        version = other.version;
+        layer = other.layer;
+        bitrate = other.bitrate;
+        sampleRate = other.sampleRate;
+        channelMode = other.channelMode;
+        frameLength = other.frameLength;
+        samplesPerFrame = other.samplesPerFrame;
+    }
+    
+    /**
+     * Gets the size of the Layer III side information that follows the header.
+     *
+     * @return Side information size in bytes
+     */
+    int getSideInfoSize() {
+        boolean mono = channelMode == MODE_MONO;
+        if (version == MPEG1) {
+            return mono ? 17 : 32;
+        }
+        return mono ? 9 : 17;
+    }
+    
+    int getVersion() {
+        return version;
+    }
+    
+    int getLayer() {
+        return layer;
+    }
+    
+    int getBitrate() {
+        return bitrate;
+    }
+    
+    int getSampleRate() {
+        return sampleRate;
+    }
+    
+    int getChannelCount() {
+        return channelMode == MODE_MONO ? 1 : 2;
+    }
+    
+    int getFrameLength() {
+        return frameLength;
+    }
+    
+    int getSamplesPerFrame() {
+        return samplesPerFrame;
+    }
+}
@@ -0,0 +1,360 @@
+package com.audioapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Seek index for MP3 files built by walking every frame header once.
+ * The index maps each frame to its byte offset and its first sample, so
+ * seeking becomes a binary search and the duration is exact for both
+ * constant and variable bitrate files.
+ */
+public final class Mp3FrameIndex {
+    
+    private static final Logger LOGGER = Logger.getLogger(Mp3FrameIndex.class.getName());
+    
+    // Size of the window used while reading frame headers
+    private static final int WINDOW_SIZE = 64 * 1024;
+    
+    // How far to search for a frame header after garbage in the stream
+    private static final int MAX_RESYNC_BYTES = 64 * 1024;
+    
+    // Indexes kept for files opened again, a few hundred KB each for a long file
+    private static final int MAX_CACHED_INDEXES = 64;
+    
+    // Indexes of files that have already been scanned, keyed by path, size and timestamp,
+    // least recently used first so a long session or large playlist does not keep them all
+    private static final Map<String, CompletableFuture<Mp3FrameIndex>> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<String, CompletableFuture<Mp3FrameIndex>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<Mp3FrameIndex>> eldest) {
+                    return size() > MAX_CACHED_INDEXES;
+                }
+            });
+    
+    // Background scanner so loading a file never waits for the scan
+    private static final ExecutorService SCANNER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Mp3FrameIndex-scanner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private final long[] frameOffsets;
+    private final long[] frameSamples;
+    private final int frameCount;
+    private final int sampleRate;
+    private final long totalSamples;
+    
+    private Mp3FrameIndex(long[] frameOffsets, long[] frameSamples, int frameCount,
+                          int sampleRate, long totalSamples) {
+        this.frameOffsets = frameOffsets;
+        this.frameSamples = frameSamples;
+        this.frameCount = frameCount;
+        this.sampleRate = sampleRate;
+        this.totalSamples = totalSamples;
+    }
+    
+    /**
+     * Returns the index for a file, scanning it in the background if it has
+     * not been indexed yet. Repeated calls for an unchanged file share the
+     * same scan, as long as the index is among the most recently used.
+     *
+     * @param file The MP3 file to index
+     * @return A future completed with the index
+     */
+    public static CompletableFuture<Mp3FrameIndex> load(File file) {
+        return CACHE.computeIfAbsent(cacheKey(file), key -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return scan(file);
+            } catch (IOException e) {
+                // Allow a later retry once the file becomes readable
+                CACHE.remove(key);
+                throw new IllegalStateException("Failed to index " + file.getName(), e);
+            }
+        }, SCANNER));
+    }
+    
+    /**
+     * Scans a file synchronously and builds its index.
+     *
+     * @param file The MP3 file to scan
+     * @return The frame index
+     * @throws IOException If the file cannot be read or contains no frames
+     */
+    public static Mp3FrameIndex scan(File file) throws IOException {
+        long startTime = System.nanoTime();
+        
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            HeaderReader reader = new HeaderReader(channel);
+            long fileSize = channel.size();
+            
+            Mp3FrameHeader first = new Mp3FrameHeader();
+            long position = findFirstFrame(reader, skipId3v2(reader), fileSize, first);
+            if (position < 0) {
+                throw new IOException("No MPEG audio frames found in " + file.getName());
+            }
+            
+            // The Xing/Info/VBRI frame carries metadata, not audio
+            if (Mp3VbrHeader.isInfoFrame(reader, position, first)) {
+                position += first.getFrameLength();
+            }
+            
+            // Estimate the number of frames so the arrays rarely need to grow
+            int capacity = (int) Math.max(1024, Math.min(Integer.MAX_VALUE - 8, fileSize / 200));
+            long[] offsets = new long[capacity];
+            long[] samples = new long[capacity];
+            int count = 0;
+            long sampleTotal = 0;
+            
+            Mp3FrameHeader header = new Mp3FrameHeader();
+            
+            while (position + 4 <= fileSize) {
+                int word = reader.readInt(position);
+                
+                if (header.decode(word) && header.isCompatibleWith(first)) {
+                    if (count == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, count + (count >> 1));
+                        samples = Arrays.copyOf(samples, offsets.length);
+                    }
+                    offsets[count] = position;
+                    samples[count] = sampleTotal;
+                    count++;
+                    
+                    sampleTotal += header.getSamplesPerFrame();
+                    position += header.getFrameLength();
+                    continue;
+                }
+                
+                // Stop at a trailing ID3v1 tag
+                if ((word >>> 8) == 0x544147) {
+                    break;
+                }
+                
+                position = resync(reader, position, fileSize, first, header);
+                if (position < 0) {
+                    break;
+                }
+            }
+            
+            if (count == 0) {
+                throw new IOException("No MPEG audio frames found in " + file.getName());
+            }
+            
+            Mp3FrameIndex index = new Mp3FrameIndex(Arrays.copyOf(offsets, count),
+                Arrays.copyOf(samples, count), count, first.getSampleRate(), sampleTotal);
+            
+            LOGGER.info("Indexed " + count + " frames of " + file.getName() + " in "
+                + (System.nanoTime() - startTime) / 1_000_000 + "ms, duration: "
+                + index.getDurationMillis() + "ms");
+            
+            return index;
+        }
+    }
+    
+    /**
+     * Gets the number of frames in the file.
+     *
+     * @return Frame count
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+    
+    /**
+     * Gets the sample rate of the stream.
+     *
+     * @return Sample rate in Hz
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+    
+    /**
+     * Gets the total number of samples per channel.
+     *
+     * @return Total samples
+     */
+    public long getTotalSamples() {
+        return totalSamples;
+    }
+    
+    /**
+     * Gets the exact duration of the stream.
+     *
+     * @return Duration in milliseconds
+     */
+    public int getDurationMillis() {
+        return (int) (totalSamples * 1000 / sampleRate);
+    }
+    
+    /**
+     * Finds the frame that contains the given playback position.
+     *
+     * @param positionMs Position in milliseconds
+     * @return Index of the frame containing the position
+     */
+    public int frameForMillis(int positionMs) {
+        long sample = (long) positionMs * sampleRate / 1000;
+        int index = Arrays.binarySearch(frameSamples, 0, frameCount, sample);
+        if (index < 0) {
+            // Insertion point minus one is the frame that contains the sample
+            index = -index - 2;
+        }
+        return Math.max(0, Math.min(index, frameCount - 1));
+    }
+    
+    /**
+     * Gets the byte offset where a frame starts.
+     *
+     * @param frame The frame index
+     * @return Byte offset of the frame header
+     */
+    public long getFrameOffset(int frame) {
+        return frameOffsets[frame];
+    }
+    
+    /**
+     * Gets the number of samples that precede a frame.
+     *
+     * @param frame The frame index
+     * @return First sample of the frame
+     */
+    public long getFrameSample(int frame) {
+        return frameSamples[frame];
+    }
+    
+    /**
+     * Gets the playback position at which a frame starts.
+     *
+     * @param frame The frame index
+     * @return Start time of the frame in milliseconds
+     */
+    public int getFrameTimeMillis(int frame) {
+        return (int) (frameSamples[frame] * 1000 / sampleRate);
+    }
+    
+    /**
+     * Builds the cache key for a file so a modified file is indexed again.
+     */
+    private static String cacheKey(File file) {
+        return file.getAbsolutePath() + ':' + file.length() + ':' + file.lastModified();
+    }
+    
+    /**
+     * Skips any ID3v2 tags at the start of the file.
+     *
+     * @return Offset of the first byte after the tags
+     */
+    static long skipId3v2(HeaderReader reader) throws IOException {
+        long position = 0;
+        while ((reader.readInt(position) >>> 8) == 0x494433) {
+            int flags = reader.readByte(position + 5);
+            int size = 0;
+            for (int i = 6; i < 10; i++) {
+                size = (size << 7) | (reader.readByte(position + i) & 0x7F);
+            }
+            position += 10 + size + ((flags & 0x10) != 0 ? 10 : 0);
+        }
+        return position;
+    }
+    
+    /**
+     * Finds the first frame header that is followed by a compatible frame,
+     * which rules out false sync words inside tags or junk data.
+     *
+     * @param header Receives the decoded first header
+     * @return Offset of the first frame or -1 if none was found
+     */
+    static long findFirstFrame(HeaderReader reader, long from, long fileSize,
+                               Mp3FrameHeader header) throws IOException {
+        Mp3FrameHeader next = new Mp3FrameHeader();
+        for (long position = from; position + 4 <= fileSize; position++) {
+            if (!header.decode(reader.readInt(position))) {
+                continue;
+            }
+            long successor = position + header.getFrameLength();
+            if (successor + 4 > fileSize
+                    || (next.decode(reader.readInt(successor)) && next.isCompatibleWith(header))) {
+                return position;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Searches forward for the next frame header that matches the stream.
+     *
+     * @return Offset of the next frame or -1 if none was found
+     */
+    private static long resync(HeaderReader reader, long from, long fileSize,
+                               Mp3FrameHeader first, Mp3FrameHeader scratch) throws IOException {
+        long limit = Math.min(fileSize - 4, from + MAX_RESYNC_BYTES);
+        for (long position = from + 1; position <= limit; position++) {
+            if (scratch.decode(reader.readInt(position)) && scratch.isCompatibleWith(first)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Reads big-endian values at absolute offsets through a sliding window.
+     */
+    static final class HeaderReader {
+        
+        private final FileChannel channel;
+        private final ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+        private long windowStart = -1;
+        private int windowLength = 0;
+        
+        HeaderReader(FileChannel channel) {
+            this.channel = channel;
+        }
+        
+        int readInt(long position) throws IOException {
+            ensure(position, 4);
+            int index = (int) (position - windowStart);
+            if (index + 4 > windowLength) {
+                return 0;
+            }
+            return window.getInt(index);
+        }
+        
+        int readByte(long position) throws IOException {
+            ensure(position, 1);
+            int index = (int) (position - windowStart);
+            if (index >= windowLength) {
+                return 0;
+            }
+            return window.get(index) & 0xFF;
+        }
+        
+        private void ensure(long position, int length) throws IOException {
+            if (windowStart >= 0 && position >= windowStart
+                    && position + length <= windowStart + windowLength) {
+                return;
+            }
+            window.clear();
+            windowStart = position;
+            windowLength = 0;
+            while (window.hasRemaining()) {
+                int read = channel.read(window, position + windowLength);
+                if (read < 0) {
+                    break;
+                }
+                windowLength += read;
+            }
+        }
+    }
+}
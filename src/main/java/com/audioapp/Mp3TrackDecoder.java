@@ -0,0 +1,326 @@
+package com.audioapp;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decodes one MP3 track from its mapped file into interleaved 16-bit PCM.
+ * When the file carries a LAME tag and the absolute start sample is known,
+ * the encoder delay and padding (plus the decoder's own delay) are trimmed,
+ * so consecutive tracks can be spliced without silence at the boundary.
+ * With a frame index and a PcmBlockCache, frames found in the cache are
+ * copied out instead of decoded, and newly decoded blocks are added to it.
+ */
+final class Mp3TrackDecoder extends TrackDecoder {
+    
+    private static final Logger LOGGER = Logger.getLogger(Mp3TrackDecoder.class.getName());
+    
+    // Delay of the MP3 synthesis filterbank, on top of the encoder delay
+    static final int DECODER_DELAY = 529;
+    
+    // Frames decoded and discarded after opening mid-stream, to refill the
+    // bit reservoir and filterbank so the first kept frame is clean
+    private static final int PRIMING_FRAMES = 2;
+    
+    private final MappedAudioSource source;
+    private final Mp3FrameIndex index;
+    private final PcmBlockCache cache;
+    private final String cacheKey;
+    
+    // Open while frames come from the file rather than the cache
+    private Bitstream bitstream;
+    private Decoder decoder;
+    private int primingFrames;
+    
+    // Number of the next frame, and the decoded sample it starts at (-1 = unknown)
+    private int frame;
+    private long frameSample;
+    
+    // Sample frames still to drop at the start, and still to play (-1 = until the end)
+    private long skipFrames;
+    private long remainingFrames;
+    
+    // Samples of the last frame, from the decoder or copied from the cache
+    private short[] frameBuffer;
+    private int frameLength;
+    private long framePosition;
+    
+    // Cached block frames are being served from, and the frame copied out of it
+    private PcmBlockCache.Block cachedBlock;
+    private int cachedBlockIndex = -1;
+    private short[] cachedFrame;
+    
+    // Block being collected for the cache
+    private short[] assembly;
+    private int assemblyBlock = -1;
+    private int assemblyFrames;
+    private int assemblyLength;
+    
+    /**
+     * Creates a decoder positioned at a byte offset of the track, for use
+     * before the frame index is available. Nothing is cached.
+     * 
+     * @param source The mapped MP3 file
+     * @param header The file's Xing/LAME header, may be null
+     * @param byteOffset Byte offset of the first frame to decode
+     * @param startSample Sample frame the first decoded frame starts at,
+     *                    or -1 if unknown, which disables trimming
+     */
+    Mp3TrackDecoder(MappedAudioSource source, Mp3VbrHeader header, long byteOffset, long startSample) {
+        this.source = source;
+        this.index = null;
+        this.cache = null;
+        this.cacheKey = null;
+        this.frameSample = startSample;
+        initTrim(header, startSample);
+        openBitstream(byteOffset, 0);
+    }
+    
+    /**
+     * Creates a decoder positioned at a frame of the track.
+     * 
+     * @param source The mapped MP3 file
+     * @param header The file's Xing/LAME header, may be null
+     * @param index The file's frame index
+     * @param startFrame Number of the first frame to decode
+     * @param cache Cache of decoded blocks, may be null
+     */
+    Mp3TrackDecoder(MappedAudioSource source, Mp3VbrHeader header, Mp3FrameIndex index, int startFrame,
+            PcmBlockCache cache) {
+        this.source = source;
+        this.index = index;
+        this.cache = cache;
+        this.cacheKey = cache != null ? PcmBlockCache.keyFor(source.getFile()) : null;
+        this.frame = startFrame;
+        this.frameSample = index.getFrameSample(startFrame);
+        initTrim(header, frameSample);
+    }
+    
+    /**
+     * Works out how much to trim from the LAME encoder delay and padding.
+     */
+    private void initTrim(Mp3VbrHeader header, long startSample) {
+        if (header != null && header.hasLameTag() && startSample >= 0) {
+            long lead = header.getEncoderDelay() + DECODER_DELAY;
+            skipFrames = Math.max(0, lead - startSample);
+            if (header.hasFrameCount()) {
+                long valid = header.getFrameCount() * header.getSamplesPerFrame()
+                        - header.getEncoderDelay() - header.getEncoderPadding();
+                remainingFrames = Math.max(0, lead + valid - Math.max(startSample, lead));
+            } else {
+                remainingFrames = -1;
+            }
+        } else {
+            skipFrames = 0;
+            remainingFrames = -1;
+        }
+    }
+    
+    /**
+     * Decodes frames until one yields samples after trimming.
+     */
+    @Override
+    protected boolean decodeChunk() throws JavaLayerException {
+        while (remainingFrames != 0) {
+            if (!nextFrame()) {
+                return false;
+            }
+            
+            // Drop the encoder and decoder delay, then stop at the padding
+            int frames = frameLength / channels;
+            int skip = (int) Math.min(skipFrames, frames);
+            skipFrames -= skip;
+            int count = frames - skip;
+            if (remainingFrames > 0) {
+                count = (int) Math.min(count, remainingFrames);
+                remainingFrames -= count;
+            }
+            
+            if (count > 0) {
+                buffer = frameBuffer;
+                offset = skip * channels;
+                length = count * channels;
+                position = framePosition >= 0 ? framePosition + skip : -1;
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Produces the samples of the next frame, from the cache when the
+     * frame's block is there and from the bitstream otherwise.
+     */
+    private boolean nextFrame() throws JavaLayerException {
+        if (index != null && frame >= index.getFrameCount()) {
+            flushAssembly();
+            return false;
+        }
+        
+        // Switch to the cache at block boundaries, or whenever nothing is open
+        if (cache != null && (bitstream == null || frame % PcmBlockCache.BLOCK_FRAMES == 0)) {
+            int block = frame / PcmBlockCache.BLOCK_FRAMES;
+            if (block != cachedBlockIndex) {
+                cachedBlock = cache.get(cacheKey, block);
+                cachedBlockIndex = block;
+            }
+            int inBlock = frame - block * PcmBlockCache.BLOCK_FRAMES;
+            if (cachedBlock != null && inBlock < cachedBlock.getFrames()) {
+                if (bitstream != null) {
+                    closeBitstream();
+                }
+                readCachedFrame(inBlock);
+                return true;
+            }
+        }
+        
+        if (bitstream == null) {
+            // Start a little early so the reservoir and filterbank are primed
+            int start = Math.max(0, frame - PRIMING_FRAMES);
+            openBitstream(index.getFrameOffset(start), frame - start);
+        }
+        
+        while (true) {
+            Header header = bitstream.readFrame();
+            if (header == null) {
+                flushAssembly();
+                return false;
+            }
+            
+            SampleBuffer samples = (SampleBuffer) decoder.decodeFrame(header, bitstream);
+            bitstream.closeFrame();
+            sampleRate = decoder.getOutputFrequency();
+            channels = decoder.getOutputChannels();
+            
+            if (primingFrames > 0) {
+                primingFrames--;
+                continue;
+            }
+            
+            frameBuffer = samples.getBuffer();
+            frameLength = samples.getBufferLength();
+            collect();
+            advance();
+            return true;
+        }
+    }
+    
+    /**
+     * Copies a frame of the current cached block into the frame buffer.
+     */
+    private void readCachedFrame(int inBlock) {
+        int perFrame = cachedBlock.getSamplesPerFrame();
+        if (cachedFrame == null || cachedFrame.length < perFrame) {
+            cachedFrame = new short[perFrame];
+        }
+        frameBuffer = cachedFrame;
+        frameLength = cachedBlock.copyFrame(inBlock, cachedFrame);
+        sampleRate = cachedBlock.getSampleRate();
+        channels = cachedBlock.getChannels();
+        advance();
+    }
+    
+    /**
+     * Moves past the frame just produced.
+     */
+    private void advance() {
+        framePosition = frameSample;
+        frame++;
+        if (frameSample >= 0) {
+            frameSample += frameLength / channels;
+        }
+    }
+    
+    /**
+     * Adds a decoded frame to the block being collected for the cache.
+     * Only blocks decoded from their first frame are collected.
+     */
+    private void collect() {
+        if (cache == null) {
+            return;
+        }
+        
+        int block = frame / PcmBlockCache.BLOCK_FRAMES;
+        int inBlock = frame - block * PcmBlockCache.BLOCK_FRAMES;
+        if (inBlock == 0) {
+            flushAssembly();
+            assemblyBlock = block;
+            assemblyFrames = 0;
+            assemblyLength = 0;
+        }
+        if (assemblyBlock != block || assemblyFrames != inBlock) {
+            return;
+        }
+        
+        if (assembly == null) {
+            assembly = new short[PcmBlockCache.BLOCK_FRAMES * frameLength];
+        }
+        if (assemblyLength + frameLength > assembly.length) {
+            // Frame sizes changed mid-stream, do not cache this block
+            assemblyBlock = -1;
+            return;
+        }
+        System.arraycopy(frameBuffer, 0, assembly, assemblyLength, frameLength);
+        assemblyLength += frameLength;
+        assemblyFrames++;
+        
+        if (assemblyFrames == PcmBlockCache.BLOCK_FRAMES) {
+            flushAssembly();
+        }
+    }
+    
+    /**
+     * Hands a collected block, complete or the last one of the file, to the cache.
+     */
+    private void flushAssembly() {
+        if (assemblyBlock >= 0 && assemblyFrames > 0) {
+            cache.put(cacheKey, assemblyBlock, assembly, assemblyLength, assemblyFrames, channels, sampleRate);
+        }
+        assemblyBlock = -1;
+    }
+    
+    /**
+     * Opens a bitstream and a fresh decoder at a byte offset.
+     * 
+     * @param byteOffset Offset of the first frame to read
+     * @param priming Number of frames to decode and discard first
+     */
+    private void openBitstream(long byteOffset, int priming) {
+        bitstream = new Bitstream(source.newInputStream(byteOffset));
+        decoder = new Decoder();
+        primingFrames = priming;
+        assemblyBlock = -1;
+    }
+    
+    /**
+     * Closes the bitstream so frames are taken from the cache.
+     */
+    private void closeBitstream() {
+        close();
+        bitstream = null;
+        decoder = null;
+        assemblyBlock = -1;
+    }
+    
+    /**
+     * Closes the bitstream. The mapped file stays open.
+     */
+    @Override
+    void close() {
+        if (bitstream == null) {
+            return;
+        }
+        try {
+            bitstream.close();
+        } catch (BitstreamException e) {
+            LOGGER.log(Level.FINE, "Error closing bitstream", e);
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package com.audioapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+/**
+ * Reads the Xing/Info, VBRI and LAME headers stored in the first frame of
+ * an MP3 file. These give the frame count, a seek table and the encoder
+ * delay and padding without scanning the file, so the duration is known
+ * as soon as the file is opened.
+ */
+public final class Mp3VbrHeader {
+    
+    private static final Logger LOGGER = Logger.getLogger(Mp3VbrHeader.class.getName());
+    
+    // Tag identifiers as big-endian integers
+    private static final int XING = 0x58696E67;
+    private static final int INFO = 0x496E666F;
+    private static final int VBRI = 0x56425249;
+    private static final int LAME = 0x4C414D45;
+    
+    // Xing header flags
+    private static final int FLAG_FRAMES = 0x1;
+    private static final int FLAG_BYTES = 0x2;
+    private static final int FLAG_TOC = 0x4;
+    private static final int FLAG_QUALITY = 0x8;
+    
+    // The VBRI header always starts 32 bytes after the frame header
+    private static final int VBRI_OFFSET = 36;
+    
+    /**
+     * The kind of header found in the first frame.
+     */
+    public enum Type {
+        XING, INFO, VBRI, NONE
+    }
+    
+    private Type type = Type.NONE;
+    private long firstFrameOffset;
+    private long audioOffset;
+    private long audioEnd;
+    private int sampleRate;
+    private int samplesPerFrame;
+    private int channels;
+    private int bitrate;
+    private long frameCount = -1;
+    private long byteCount = -1;
+    private int[] xingToc;
+    private long[] vbriTocOffsets;
+    private int vbriFramesPerEntry;
+    private int encoderDelay;
+    private int encoderPadding;
+    private boolean lameTag;
+    
+    private Mp3VbrHeader() {
+    }
+    
+    /**
+     * Reads the header of an MP3 file. Only the first frame is examined.
+     * 
+     * @param file The MP3 file
+     * @return The parsed header, with type NONE if the file has no VBR tag
+     * @throws IOException If the file cannot be read or has no MPEG frames
+     */
+    public static Mp3VbrHeader read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Mp3FrameIndex.HeaderReader reader = new Mp3FrameIndex.HeaderReader(channel);
+            long fileSize = channel.size();
+            
+            Mp3FrameHeader first = new Mp3FrameHeader();
+            long offset = Mp3FrameIndex.findFirstFrame(reader, Mp3FrameIndex.skipId3v2(reader), fileSize, first);
+            if (offset < 0) {
+                throw new IOException("No MPEG audio frames found in " + file.getName());
+            }
+            
+            Mp3VbrHeader header = new Mp3VbrHeader();
+            header.firstFrameOffset = offset;
+            header.audioOffset = offset;
+            header.audioEnd = hasId3v1(reader, fileSize) ? fileSize - 128 : fileSize;
+            header.sampleRate = first.getSampleRate();
+            header.samplesPerFrame = first.getSamplesPerFrame();
+            header.channels = first.getChannelCount();
+            header.bitrate = first.getBitrate();
+            
+            long xingOffset = offset + 4 + first.getSideInfoSize();
+            int tag = reader.readInt(xingOffset);
+            if (tag == XING || tag == INFO) {
+                header.parseXing(reader, xingOffset, tag == XING ? Type.XING : Type.INFO);
+                header.audioOffset = offset + first.getFrameLength();
+            } else if (reader.readInt(offset + VBRI_OFFSET) == VBRI) {
+                header.parseVbri(reader, offset + VBRI_OFFSET);
+                header.audioOffset = offset + first.getFrameLength();
+            }
+            
+            LOGGER.info("MP3 header of " + file.getName() + ": " + header.type
+                + ", frames: " + header.frameCount + ", delay: " + header.encoderDelay
+                + ", padding: " + header.encoderPadding);
+            
+            return header;
+        }
+    }
+    
+    /**
+     * Checks whether a frame is a Xing, Info or VBRI metadata frame.
+     * 
+     * @param reader Reader positioned over the file
+     * @param offset Offset of the frame header
+     * @param header The decoded frame header
+     * @return true if the frame carries a VBR tag rather than audio
+     */
+    static boolean isInfoFrame(Mp3FrameIndex.HeaderReader reader, long offset,
+                               Mp3FrameHeader header) throws IOException {
+        int tag = reader.readInt(offset + 4 + header.getSideInfoSize());
+        return tag == XING || tag == INFO || reader.readInt(offset + VBRI_OFFSET) == VBRI;
+    }
+    
+    /**
+     * Gets the kind of header found in the first frame.
+     * 
+     * @return The header type
+     */
+    public Type getType() {
+        return type;
+    }
+    
+    /**
+     * Checks whether the header provides an exact frame count.
+     * 
+     * @return true if the frame count is known
+     */
+    public boolean hasFrameCount() {
+        return frameCount > 0;
+    }
+    
+    /**
+     * Gets the number of audio frames declared by the header.
+     * 
+     * @return Frame count, or -1 if unknown
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+    
+    /**
+     * Gets the offset of the first frame that contains audio.
+     * 
+     * @return Byte offset of the first audio frame
+     */
+    public long getAudioOffset() {
+        return audioOffset;
+    }
+    
+    /**
+     * Gets the sample rate of the stream.
+     * 
+     * @return Sample rate in Hz
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+    
+    /**
+     * Gets the number of channels of the stream.
+     * 
+     * @return Channel count
+     */
+    public int getChannels() {
+        return channels;
+    }
+    
+    /**
+     * Gets the number of samples each frame decodes to.
+     * 
+     * @return Samples per frame and channel
+     */
+    public int getSamplesPerFrame() {
+        return samplesPerFrame;
+    }
+    
+    /**
+     * Gets the encoder delay recorded in the LAME tag.
+     * 
+     * @return Leading samples added by the encoder
+     */
+    public int getEncoderDelay() {
+        return encoderDelay;
+    }
+    
+    /**
+     * Gets the encoder padding recorded in the LAME tag.
+     * 
+     * @return Trailing samples added by the encoder
+     */
+    public int getEncoderPadding() {
+        return encoderPadding;
+    }
+    
+    /**
+     * Checks whether a LAME tag with delay and padding was found.
+     * 
+     * @return true if the LAME tag is present
+     */
+    public boolean hasLameTag() {
+        return lameTag;
+    }
+    
+    /**
+     * Gets the duration of the stream. Uses the frame count when available
+     * and otherwise assumes a constant bitrate equal to the first frame's.
+     * 
+     * @return Duration in milliseconds
+     */
+    public int getDurationMillis() {
+        if (hasFrameCount()) {
+            return (int) (frameCount * samplesPerFrame * 1000 / sampleRate);
+        }
+        return (int) ((audioEnd - audioOffset) * 8000 / bitrate);
+    }
+    
+    /**
+     * Estimates the byte offset of a playback position from the seek table.
+     * The result is approximate; the decoder resynchronizes on the next frame.
+     * 
+     * @param positionMs Position in milliseconds
+     * @return Byte offset from the start of the file
+     */
+    public long byteOffsetFor(int positionMs) {
+        int duration = getDurationMillis();
+        if (positionMs <= 0 || duration <= 0) {
+            return audioOffset;
+        }
+        
+        long audioBytes = byteCount > 0 ? byteCount : audioEnd - audioOffset;
+        
+        if (xingToc != null) {
+            // Linear interpolation between the two surrounding TOC entries
+            double percent = Math.min(99.999, positionMs * 100.0 / duration);
+            int entry = (int) percent;
+            double before = xingToc[entry];
+            double after = entry < 99 ? xingToc[entry + 1] : 256;
+            double scaled = before + (after - before) * (percent - entry);
+            return firstFrameOffset + (long) (scaled / 256.0 * audioBytes);
+        }
+        
+        if (vbriTocOffsets != null) {
+            // Each entry covers a fixed number of frames
+            double frame = (double) positionMs * sampleRate / 1000 / samplesPerFrame;
+            int entry = (int) (frame / vbriFramesPerEntry);
+            if (entry >= vbriTocOffsets.length - 1) {
+                return vbriTocOffsets[vbriTocOffsets.length - 1];
+            }
+            double fraction = frame / vbriFramesPerEntry - entry;
+            long start = vbriTocOffsets[entry];
+            return start + (long) ((vbriTocOffsets[entry + 1] - start) * fraction);
+        }
+        
+        // Constant bitrate
+        return audioOffset + (long) ((double) positionMs / duration * (audioEnd - audioOffset));
+    }
+    
+    /**
+     * Parses a Xing or Info header and the LAME extension that may follow it.
+     */
+    private void parseXing(Mp3FrameIndex.HeaderReader reader, long offset, Type xingType) throws IOException {
+        type = xingType;
+        int flags = reader.readInt(offset + 4);
+        long position = offset + 8;
+        
+        if ((flags & FLAG_FRAMES) != 0) {
+            frameCount = reader.readInt(position) & 0xFFFFFFFFL;
+            position += 4;
+        }
+        if ((flags & FLAG_BYTES) != 0) {
+            byteCount = reader.readInt(position) & 0xFFFFFFFFL;
+            position += 4;
+        }
+        if ((flags & FLAG_TOC) != 0) {
+            xingToc = new int[100];
+            for (int i = 0; i < 100; i++) {
+                xingToc[i] = reader.readByte(position + i);
+            }
+            position += 100;
+        }
+        if ((flags & FLAG_QUALITY) != 0) {
+            position += 4;
+        }
+        
+        // The LAME tag stores 12 bits of delay and 12 bits of padding at offset 21
+        if (reader.readInt(position) == LAME) {
+            int packed = (reader.readByte(position + 21) << 16)
+                | (reader.readByte(position + 22) << 8)
+                | reader.readByte(position + 23);
+            encoderDelay = packed >>> 12;
+            encoderPadding = packed & 0xFFF;
+            lameTag = true;
+        }
+    }
+    
+    /**
+     * Parses a VBRI header written by the Fraunhofer encoder.
+     */
+    private void parseVbri(Mp3FrameIndex.HeaderReader reader, long offset) throws IOException {
+        type = Type.VBRI;
+        encoderDelay = (reader.readByte(offset + 6) << 8) | reader.readByte(offset + 7);
+        byteCount = reader.readInt(offset + 10) & 0xFFFFFFFFL;
+        frameCount = reader.readInt(offset + 14) & 0xFFFFFFFFL;
+        
+        int entries = (reader.readByte(offset + 18) << 8) | reader.readByte(offset + 19);
+        int scale = (reader.readByte(offset + 20) << 8) | reader.readByte(offset + 21);
+        int entrySize = (reader.readByte(offset + 22) << 8) | reader.readByte(offset + 23);
+        vbriFramesPerEntry = (reader.readByte(offset + 24) << 8) | reader.readByte(offset + 25);
+        
+        if (entries == 0 || entrySize < 1 || entrySize > 4 || vbriFramesPerEntry == 0) {
+            return;
+        }
+        
+        // Entries hold the size of each chunk, accumulate them into absolute offsets
+        vbriTocOffsets = new long[entries + 1];
+        vbriTocOffsets[0] = firstFrameOffset;
+        long position = offset + 26;
+        for (int i = 0; i < entries; i++) {
+            int size = 0;
+            for (int b = 0; b < entrySize; b++) {
+                size = (size << 8) | reader.readByte(position++);
+            }
+            vbriTocOffsets[i + 1] = vbriTocOffsets[i] + (long) size * Math.max(1, scale);
+        }
+    }
+    
+    /**
+     * Checks for an ID3v1 tag in the last 128 bytes of the file.
+     */
+    private static boolean hasId3v1(Mp3FrameIndex.HeaderReader reader, long fileSize) throws IOException {
+        return fileSize >= 128 && (reader.readInt(fileSize - 128) >>> 8) == 0x544147;
+    }
+}
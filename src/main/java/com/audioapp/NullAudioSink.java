@@ -0,0 +1,112 @@
+package com.audioapp;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Sink that discards audio as fast as it is written, so the pipeline runs
+ * at the speed of the CPU. Every frame counts as played the moment it is
+ * written, which keeps positions and splices exact. Used to measure decode
+ * and DSP throughput on machines without a sound card, and as the base of
+ * sinks that write files.
+ */
+public class NullAudioSink implements AudioSink {
+    
+    // Buffer reported to the output thread, which sizes its chunks from it
+    private static final int BUFFER_MS = 100;
+    
+    private volatile AudioFormat format;
+    private volatile long framesWritten;
+    private volatile long positionBase;
+    private int channels;
+    private int bufferFrames;
+    private volatile int sampleRate;
+    
+    @Override
+    public void open(int sampleRate, int channels, int bufferMillis) throws Exception {
+        close();
+        this.format = new AudioFormat(sampleRate, 16, channels, true, false);
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        this.bufferFrames = Math.max(1, (int) ((long) sampleRate * (bufferMillis > 0 ? bufferMillis : BUFFER_MS) / 1000));
+        this.framesWritten = 0;
+        this.positionBase = 0;
+    }
+    
+    @Override
+    public boolean isOpen() {
+        return format != null;
+    }
+    
+    @Override
+    public boolean isRealtime() {
+        return false;
+    }
+    
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+    
+    @Override
+    public int getBufferFrames() {
+        return format != null ? bufferFrames : 0;
+    }
+    
+    @Override
+    public void write(short[] samples, int offset, int length) {
+        if (format == null) {
+            return;
+        }
+        framesWritten += length / channels;
+    }
+    
+    @Override
+    public void pause() {
+        // Nothing plays between writes, so there is nothing to stop
+    }
+    
+    @Override
+    public void resume() {
+        // See pause()
+    }
+    
+    @Override
+    public void drain() {
+        // Written audio has already been played
+    }
+    
+    @Override
+    public void flush() {
+        // Nothing is buffered; only the position starts over
+        positionBase = framesWritten;
+    }
+    
+    @Override
+    public long getFramePosition() {
+        return framesWritten - positionBase;
+    }
+    
+    /**
+     * Gets the number of sample frames written since the sink was opened.
+     * Unlike the frame position, this stays valid after closing.
+     * 
+     * @return Frames written
+     */
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+    
+    /**
+     * Gets the sample rate the sink was last opened with.
+     * 
+     * @return Sample rate in Hz, 0 if never opened
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+    
+    @Override
+    public void close() {
+        format = null;
+    }
+}
@@ -0,0 +1,138 @@
+package com.audioapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * Runs a file through the AudioPlayer's whole pipeline (decoder, resampler,
+ * time-stretcher, equalizer and gain) into a sink that is not a sound
+ * card, as fast as the CPU allows. Rendering into a {@link NullAudioSink}
+ * measures throughput without an audio device; rendering into a
+ * {@link WavFileSink} exports the processed audio.
+ */
+public final class OfflineRenderer {
+    
+    private static final Logger LOGGER = Logger.getLogger(OfflineRenderer.class.getName());
+    
+    // How often the end of the render is checked
+    private static final long POLL_MILLIS = 5;
+    
+    private OfflineRenderer() {
+    }
+    
+    /**
+     * Plays a file to its end into a sink. The player is used for this
+     * render only and its sink factory is replaced.
+     * 
+     * @param player A player holding the processing settings to apply
+     * @param file The file to render
+     * @param sink The sink to render into
+     * @return Amount of audio rendered and the time it took
+     * @throws Exception If the file cannot be loaded or rendering stops early
+     */
+    public static Result render(AudioPlayer player, File file, NullAudioSink sink) throws Exception {
+        player.setSinkFactory(() -> sink);
+        player.loadFile(file);
+        
+        long completions = player.getClock().getCompletionCount();
+        long startNanos = System.nanoTime();
+        player.play();
+        while (!player.isStopped()) {
+            Thread.sleep(POLL_MILLIS);
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        
+        if (player.getPlaybackError() != null) {
+            throw new IOException("Rendering of " + file.getName() + " failed", player.getPlaybackError());
+        }
+        if (player.getClock().getCompletionCount() == completions) {
+            throw new IOException("Rendering of " + file.getName() + " stopped before the end");
+        }
+        
+        Result result = new Result(sink.getFramesWritten(), sink.getSampleRate(), elapsedNanos);
+        LOGGER.info("Rendered " + file.getName() + ": " + result);
+        return result;
+    }
+    
+    /**
+     * Writes a file, processed with the settings of a player, to a WAV
+     * file. The player itself is not touched; a separate one does the work
+     * and is released afterwards.
+     * 
+     * @param settings Player whose volume, speed, output rate and equalizer are applied
+     * @param file The file to export
+     * @param target The WAV file to write
+     * @return Amount of audio rendered and the time it took
+     * @throws Exception If the file cannot be read or the WAV file written
+     */
+    public static Result exportWav(AudioPlayer settings, File file, File target) throws Exception {
+        AudioPlayer player = new AudioPlayer();
+        player.setVolume(settings.getVolume());
+        player.setPlaybackSpeed(settings.getPlaybackSpeed());
+        player.setOutputSampleRate(settings.getOutputSampleRate());
+        player.getEqualizer().copyFrom(settings.getEqualizer());
+        try {
+            return render(player, file, new WavFileSink(target));
+        } finally {
+            player.release();
+        }
+    }
+    
+    /**
+     * Outcome of a render.
+     */
+    public static final class Result {
+        private final long frames;
+        private final int sampleRate;
+        private final long elapsedNanos;
+        
+        Result(long frames, int sampleRate, long elapsedNanos) {
+            this.frames = frames;
+            this.sampleRate = sampleRate;
+            this.elapsedNanos = elapsedNanos;
+        }
+        
+        /**
+         * Gets the number of sample frames the sink received.
+         * 
+         * @return Frame count
+         */
+        public long getFrames() {
+            return frames;
+        }
+        
+        /**
+         * Gets the length of the rendered audio.
+         * 
+         * @return Duration in milliseconds
+         */
+        public long getAudioMillis() {
+            return sampleRate > 0 ? frames * 1000 / sampleRate : 0;
+        }
+        
+        /**
+         * Gets the wall-clock time the render took.
+         * 
+         * @return Time in milliseconds
+         */
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+        
+        /**
+         * Gets how many times faster than real time the render ran.
+         * 
+         * @return Audio duration divided by elapsed time
+         */
+        public double getRealtimeFactor() {
+            return elapsedNanos > 0 ? getAudioMillis() * 1e6 / elapsedNanos : 0;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%d frames (%d ms of audio) in %d ms, %.1fx real time",
+                frames, getAudioMillis(), getElapsedMillis(), getRealtimeFactor());
+        }
+    }
+}
@@ -0,0 +1,490 @@
+package com.audioapp;
+
+import java.util.Arrays;
+
+/**
+ * Ten-band parametric equalizer applied in place to interleaved 16-bit PCM.
+ * Each band is a biquad filter (low shelf, peaking or high shelf) and the
+ * bands run as a cascade. Coefficients are recomputed only when a setting
+ * changes, bands at 0 dB are skipped once they have rung out, and once
+ * its work buffer has grown to the output chunk size processing allocates
+ * nothing. The time spent processing is counted so the load can be
+ * checked against the real time the audio takes to play.
+ */
+public final class ParametricEqualizer {
+    
+    // Number of bands
+    public static final int BANDS = 10;
+    
+    // Gain range of a band and of the preamp
+    public static final double MAX_GAIN_DB = 12.0;
+    
+    // Default center frequencies, one octave apart
+    private static final double[] DEFAULT_FREQUENCIES = {
+        31, 62, 125, 250, 500, 1000, 2000, 4000, 8000, 16000
+    };
+    
+    // About one octave of bandwidth for peaking bands, no overshoot for shelves
+    private static final double PEAKING_Q = 1.41;
+    private static final double SHELF_Q = 0.707;
+    
+    // Filter frequencies are kept below this fraction of the sample rate
+    private static final double MAX_FREQUENCY_RATIO = 0.45;
+    
+    // Added to the input so filter state never decays into slow denormal numbers
+    private static final double DENORMAL_GUARD = 1e-20;
+    
+    // A band set to 0 dB leaves the cascade once its memory is below this, in sample units
+    private static final double RING_OUT_LEVEL = 0.01;
+    
+    /**
+     * Response shape of a band.
+     */
+    public enum FilterType {
+        LOW_SHELF, PEAKING, HIGH_SHELF
+    }
+    
+    /**
+     * Band gain settings for the default frequencies.
+     */
+    public enum Preset {
+        FLAT("Flat", 0, 0, 0, 0, 0, 0, 0, 0, 0, 0),
+        BASS_BOOST("Bass boost", 6, 5, 4, 2, 0, 0, 0, 0, 0, 0),
+        TREBLE_BOOST("Treble boost", 0, 0, 0, 0, 0, 1, 2, 4, 5, 6),
+        VOCAL("Vocal", -2, -2, -1, 1, 3, 3, 2, 1, 0, -1),
+        ROCK("Rock", 5, 4, 2, -1, -2, -1, 2, 3, 4, 4),
+        CLASSICAL("Classical", 4, 3, 2, 1, 0, 0, 0, 1, 2, 3),
+        LOUDNESS("Loudness", 5, 3, 0, 0, -1, 0, 0, 1, 3, 4);
+        
+        private final String label;
+        private final double[] gains;
+        
+        Preset(String label, double... gains) {
+            this.label = label;
+            this.gains = gains;
+        }
+        
+        /**
+         * Gets the gain of a band.
+         * 
+         * @param band Band index
+         * @return Gain in dB
+         */
+        public double getGain(int band) {
+            return gains[band];
+        }
+        
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+    
+    // Settings, written by the UI thread under the instance lock
+    private final FilterType[] types = new FilterType[BANDS];
+    private final double[] frequencies = new double[BANDS];
+    private final double[] gainsDb = new double[BANDS];
+    private final double[] qs = new double[BANDS];
+    private double preampDb;
+    private volatile boolean enabled = true;
+    
+    // Bumped on every change, the audio thread recomputes when it differs
+    private volatile int revision = 1;
+    
+    // Audio thread state: coefficients of the active bands and the filter memory
+    private int appliedRevision;
+    private int sampleRate;
+    private int channels;
+    private final int[] active = new int[BANDS];
+    private int activeCount;
+    private final boolean[] running = new boolean[BANDS];
+    private final boolean[] flat = new boolean[BANDS];
+    private final double[] b0 = new double[BANDS];
+    private final double[] b1 = new double[BANDS];
+    private final double[] b2 = new double[BANDS];
+    private final double[] a1 = new double[BANDS];
+    private final double[] a2 = new double[BANDS];
+    private double preamp = 1.0;
+    private double[] z1 = new double[0];
+    private double[] z2 = new double[0];
+    
+    // One channel of the chunk being filtered, grown to the largest chunk
+    private double[] work = new double[0];
+    
+    // Processing time, written by the audio thread
+    private volatile long processNanos;
+    private volatile long processFrames;
+    private volatile long lastBufferNanos;
+    
+    /**
+     * Creates a flat equalizer with the default bands.
+     */
+    public ParametricEqualizer() {
+        for (int i = 0; i < BANDS; i++) {
+            types[i] = i == 0 ? FilterType.LOW_SHELF : i == BANDS - 1 ? FilterType.HIGH_SHELF : FilterType.PEAKING;
+            frequencies[i] = DEFAULT_FREQUENCIES[i];
+            qs[i] = types[i] == FilterType.PEAKING ? PEAKING_Q : SHELF_Q;
+        }
+    }
+    
+    /**
+     * Prepares the filters for a stream and clears their memory and the
+     * load counter. Called when the output opens.
+     * 
+     * @param sampleRate Output sample rate in Hz
+     * @param channels Number of interleaved channels
+     */
+    public void prepare(int sampleRate, int channels) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        if (z1.length != BANDS * channels) {
+            z1 = new double[BANDS * channels];
+            z2 = new double[BANDS * channels];
+        } else {
+            Arrays.fill(z1, 0);
+            Arrays.fill(z2, 0);
+        }
+        Arrays.fill(running, false);
+        appliedRevision = 0;
+        processNanos = 0;
+        processFrames = 0;
+        lastBufferNanos = 0;
+    }
+    
+    /**
+     * Turns the equalizer on or off. When off, samples pass unchanged.
+     * 
+     * @param enabled true to apply the bands
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    /**
+     * Checks whether the equalizer is on.
+     * 
+     * @return true if the bands are applied
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Sets all parameters of a band.
+     * 
+     * @param band Band index, 0 to BANDS - 1
+     * @param type Response shape
+     * @param frequency Center or corner frequency in Hz
+     * @param gainDb Gain in dB, clamped to +/- MAX_GAIN_DB
+     * @param q Quality factor, clamped to 0.1 - 10
+     */
+    public synchronized void setBand(int band, FilterType type, double frequency, double gainDb, double q) {
+        types[band] = type;
+        frequencies[band] = Math.max(10, frequency);
+        gainsDb[band] = clampGain(gainDb);
+        qs[band] = Math.max(0.1, Math.min(10, q));
+        revision++;
+    }
+    
+    /**
+     * Sets the gain of a band, keeping its shape and frequency.
+     * 
+     * @param band Band index, 0 to BANDS - 1
+     * @param gainDb Gain in dB, clamped to +/- MAX_GAIN_DB
+     */
+    public synchronized void setBandGain(int band, double gainDb) {
+        gainsDb[band] = clampGain(gainDb);
+        revision++;
+    }
+    
+    /**
+     * Gets the gain of a band.
+     * 
+     * @param band Band index
+     * @return Gain in dB
+     */
+    public synchronized double getBandGain(int band) {
+        return gainsDb[band];
+    }
+    
+    /**
+     * Gets the center or corner frequency of a band.
+     * 
+     * @param band Band index
+     * @return Frequency in Hz
+     */
+    public synchronized double getBandFrequency(int band) {
+        return frequencies[band];
+    }
+    
+    /**
+     * Gets the response shape of a band.
+     * 
+     * @param band Band index
+     * @return Filter type
+     */
+    public synchronized FilterType getBandType(int band) {
+        return types[band];
+    }
+    
+    /**
+     * Gets the quality factor of a band.
+     * 
+     * @param band Band index
+     * @return Q
+     */
+    public synchronized double getBandQ(int band) {
+        return qs[band];
+    }
+    
+    /**
+     * Sets the gain applied before the bands, to leave headroom for boosts.
+     * 
+     * @param gainDb Gain in dB, clamped to +/- MAX_GAIN_DB
+     */
+    public synchronized void setPreamp(double gainDb) {
+        preampDb = clampGain(gainDb);
+        revision++;
+    }
+    
+    /**
+     * Gets the gain applied before the bands.
+     * 
+     * @return Gain in dB
+     */
+    public synchronized double getPreamp() {
+        return preampDb;
+    }
+    
+    /**
+     * Resets the bands to the default shapes and frequencies with the
+     * preset's gains. The preamp is lowered by the largest boost so the
+     * preset does not clip.
+     * 
+     * @param preset The preset to apply
+     */
+    public synchronized void applyPreset(Preset preset) {
+        double maxBoost = 0;
+        for (int i = 0; i < BANDS; i++) {
+            types[i] = i == 0 ? FilterType.LOW_SHELF : i == BANDS - 1 ? FilterType.HIGH_SHELF : FilterType.PEAKING;
+            frequencies[i] = DEFAULT_FREQUENCIES[i];
+            qs[i] = types[i] == FilterType.PEAKING ? PEAKING_Q : SHELF_Q;
+            gainsDb[i] = clampGain(preset.getGain(i));
+            maxBoost = Math.max(maxBoost, gainsDb[i]);
+        }
+        preampDb = -maxBoost;
+        revision++;
+    }
+    
+    /**
+     * Takes over all settings of another equalizer.
+     * 
+     * @param other The equalizer to copy
+     */
+    public void copyFrom(ParametricEqualizer other) {
+        synchronized (other) {
+            synchronized (this) {
+                System.arraycopy(other.types, 0, types, 0, BANDS);
+                System.arraycopy(other.frequencies, 0, frequencies, 0, BANDS);
+                System.arraycopy(other.gainsDb, 0, gainsDb, 0, BANDS);
+                System.arraycopy(other.qs, 0, qs, 0, BANDS);
+                preampDb = other.preampDb;
+                enabled = other.enabled;
+                revision++;
+            }
+        }
+    }
+    
+    /**
+     * Applies the equalizer in place.
+     * 
+     * @param samples Interleaved samples
+     * @param offset Index of the first sample
+     * @param length Number of samples, a multiple of the channel count
+     */
+    public void process(short[] samples, int offset, int length) {
+        if (!enabled || sampleRate == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        if (revision != appliedRevision) {
+            updateCoefficients();
+        }
+        if (activeCount == 0 && preamp == 1.0) {
+            return;
+        }
+        
+        int frames = length / channels;
+        if (work.length < frames) {
+            work = new double[frames];
+        }
+        
+        // One channel at a time through each band, with the band's state in locals
+        for (int c = 0; c < channels; c++) {
+            for (int f = 0, i = offset + c; f < frames; f++, i += channels) {
+                work[f] = samples[i] * preamp + DENORMAL_GUARD;
+            }
+            
+            for (int n = 0; n < activeCount; n++) {
+                int band = active[n];
+                int state = band * channels + c;
+                double cb0 = b0[band];
+                double cb1 = b1[band];
+                double cb2 = b2[band];
+                double ca1 = a1[band];
+                double ca2 = a2[band];
+                double s1 = z1[state];
+                double s2 = z2[state];
+                
+                // Transposed direct form II
+                for (int f = 0; f < frames; f++) {
+                    double x = work[f];
+                    double y = cb0 * x + s1;
+                    s1 = cb1 * x - ca1 * y + s2;
+                    s2 = cb2 * x - ca2 * y;
+                    work[f] = y;
+                }
+                z1[state] = s1;
+                z2[state] = s2;
+            }
+            
+            for (int f = 0, i = offset + c; f < frames; f++, i += channels) {
+                samples[i] = GainStage.clip(work[f]);
+            }
+        }
+        dropRungOutBands();
+        
+        long elapsed = System.nanoTime() - start;
+        lastBufferNanos = elapsed;
+        processNanos += elapsed;
+        processFrames += length / channels;
+    }
+    
+    /**
+     * Gets the time spent in {@link #process} as a fraction of the time the
+     * processed audio takes to play, since the output opened.
+     * 
+     * @return Load of one core, 0.01 is 1%
+     */
+    public double getCpuLoad() {
+        long frames = processFrames;
+        if (frames == 0 || sampleRate == 0) {
+            return 0;
+        }
+        return processNanos / (frames * 1e9 / sampleRate);
+    }
+    
+    /**
+     * Gets the time the last call to {@link #process} took.
+     * 
+     * @return Time in nanoseconds
+     */
+    public long getLastBufferNanos() {
+        return lastBufferNanos;
+    }
+    
+    /**
+     * Removes bands set to 0 dB from the cascade once what they still held
+     * has died away. Until then they run with unity coefficients, so their
+     * memory decays through the filter instead of being cut off.
+     */
+    private void dropRungOutBands() {
+        int kept = 0;
+        for (int n = 0; n < activeCount; n++) {
+            int band = active[n];
+            if (flat[band] && isRungOut(band)) {
+                running[band] = false;
+            } else {
+                active[kept++] = band;
+            }
+        }
+        activeCount = kept;
+    }
+    
+    /**
+     * Checks whether the memory of a band is negligible on every channel.
+     */
+    private boolean isRungOut(int band) {
+        for (int state = band * channels; state < (band + 1) * channels; state++) {
+            if (Math.abs(z1[state]) > RING_OUT_LEVEL || Math.abs(z2[state]) > RING_OUT_LEVEL) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Recomputes the coefficients of the bands in the cascade, using the
+     * formulas of the RBJ audio EQ cookbook. Filter memory of a running
+     * band is kept so a change does not click; a band set to 0 dB keeps
+     * running with unity coefficients until it has rung out, and a band
+     * that joins the cascade again starts from silence.
+     */
+    private synchronized void updateCoefficients() {
+        appliedRevision = revision;
+        preamp = Math.pow(10, preampDb / 20);
+        activeCount = 0;
+        
+        for (int band = 0; band < BANDS; band++) {
+            flat[band] = gainsDb[band] == 0;
+            if (!running[band]) {
+                if (flat[band]) {
+                    continue;
+                }
+                Arrays.fill(z1, band * channels, (band + 1) * channels, 0);
+                Arrays.fill(z2, band * channels, (band + 1) * channels, 0);
+                running[band] = true;
+            }
+            double frequency = Math.min(frequencies[band], sampleRate * MAX_FREQUENCY_RATIO);
+            double a = Math.pow(10, gainsDb[band] / 40);
+            double w0 = 2 * Math.PI * frequency / sampleRate;
+            double cos = Math.cos(w0);
+            double alpha = Math.sin(w0) / (2 * qs[band]);
+            double shelf = 2 * Math.sqrt(a) * alpha;
+            
+            double nb0;
+            double nb1;
+            double nb2;
+            double na0;
+            double na1;
+            double na2;
+            switch (types[band]) {
+                case LOW_SHELF:
+                    nb0 = a * ((a + 1) - (a - 1) * cos + shelf);
+                    nb1 = 2 * a * ((a - 1) - (a + 1) * cos);
+                    nb2 = a * ((a + 1) - (a - 1) * cos - shelf);
+                    na0 = (a + 1) + (a - 1) * cos + shelf;
+                    na1 = -2 * ((a - 1) + (a + 1) * cos);
+                    na2 = (a + 1) + (a - 1) * cos - shelf;
+                    break;
+                case HIGH_SHELF:
+                    nb0 = a * ((a + 1) + (a - 1) * cos + shelf);
+                    nb1 = -2 * a * ((a - 1) + (a + 1) * cos);
+                    nb2 = a * ((a + 1) + (a - 1) * cos - shelf);
+                    na0 = (a + 1) - (a - 1) * cos + shelf;
+                    na1 = 2 * ((a - 1) - (a + 1) * cos);
+                    na2 = (a + 1) - (a - 1) * cos - shelf;
+                    break;
+                default:
+                    nb0 = 1 + alpha * a;
+                    nb1 = -2 * cos;
+                    nb2 = 1 - alpha * a;
+                    na0 = 1 + alpha / a;
+                    na1 = -2 * cos;
+                    na2 = 1 - alpha / a;
+                    break;
+            }
+            
+            b0[band] = nb0 / na0;
+            b1[band] = nb1 / na0;
+            b2[band] = nb2 / na0;
+            a1[band] = na1 / na0;
+            a2[band] = na2 / na0;
+            active[activeCount++] = band;
+        }
+    }
+    
+    private static double clampGain(double gainDb) {
+        return Math.max(-MAX_GAIN_DB, Math.min(MAX_GAIN_DB, gainDb));
+    }
+}
@@ -0,0 +1,248 @@
+package com.audioapp;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Least-recently-used cache of decoded PCM, in blocks of consecutive MP3
+ * frames keyed by file and block number. Samples live in direct buffers
+ * outside the Java heap, bounded by a byte budget. A decoder that finds a
+ * block here copies it out instead of decoding, which makes seeking back
+ * into audio that was recently played, and looping over it, nearly free.
+ */
+public final class PcmBlockCache {
+    
+    private static final Logger LOGGER = Logger.getLogger(PcmBlockCache.class.getName());
+    
+    // Default budget, a little over six minutes of 44.1 kHz stereo
+    public static final long DEFAULT_BUDGET_BYTES = 64L * 1024 * 1024;
+    
+    // Number of MP3 frames per block, about one second at 44.1 kHz
+    public static final int BLOCK_FRAMES = 38;
+    
+    // Access-ordered, so iteration starts at the least recently used block
+    private final LinkedHashMap<String, Block> blocks = new LinkedHashMap<>(64, 0.75f, true);
+    
+    private long budgetBytes;
+    private long usedBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    
+    /**
+     * Creates a cache with the given budget.
+     * 
+     * @param budgetBytes Maximum bytes of samples held, 0 disables caching
+     */
+    public PcmBlockCache(long budgetBytes) {
+        this.budgetBytes = Math.max(0, budgetBytes);
+    }
+    
+    /**
+     * Gets the key identifying a file's contents in the cache.
+     * A modified file gets a new key, so stale samples are never returned.
+     * 
+     * @param file The audio file
+     * @return Cache key
+     */
+    public static String keyFor(File file) {
+        return file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+    }
+    
+    /**
+     * Looks up a block.
+     * 
+     * @param fileKey Key from {@link #keyFor(File)}
+     * @param block Block number, the first frame divided by {@link #BLOCK_FRAMES}
+     * @return The block, or null if it is not cached
+     */
+    public synchronized Block get(String fileKey, int block) {
+        Block cached = blocks.get(blockKey(fileKey, block));
+        if (cached != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return cached;
+    }
+    
+    /**
+     * Stores a decoded block, evicting the least recently used blocks to
+     * stay within the budget. Does nothing if the block is already cached.
+     * 
+     * @param fileKey Key from {@link #keyFor(File)}
+     * @param block Block number
+     * @param samples Interleaved samples of the block's frames
+     * @param length Number of samples
+     * @param frames Number of MP3 frames in the block
+     * @param channels Number of interleaved channels
+     * @param sampleRate Sample rate in Hz
+     */
+    public synchronized void put(String fileKey, int block, short[] samples, int length,
+            int frames, int channels, int sampleRate) {
+        long bytes = length * 2L;
+        if (bytes > budgetBytes) {
+            return;
+        }
+        
+        String key = blockKey(fileKey, block);
+        if (blocks.containsKey(key)) {
+            return;
+        }
+        
+        usedBytes += bytes;
+        evict();
+        
+        ByteBuffer data = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+        data.asShortBuffer().put(samples, 0, length);
+        blocks.put(key, new Block(data.asShortBuffer(), frames, length / frames, channels, sampleRate));
+    }
+    
+    /**
+     * Changes the budget, evicting blocks if the cache is now over it.
+     * 
+     * @param budgetBytes Maximum bytes of samples held, 0 disables caching
+     */
+    public synchronized void setBudget(long budgetBytes) {
+        this.budgetBytes = Math.max(0, budgetBytes);
+        evict();
+        LOGGER.info("PCM cache budget set to: " + (this.budgetBytes / 1024) + " KB");
+    }
+    
+    /**
+     * Gets the budget.
+     * 
+     * @return Maximum bytes of samples held
+     */
+    public synchronized long getBudget() {
+        return budgetBytes;
+    }
+    
+    /**
+     * Gets the bytes of samples currently held.
+     * 
+     * @return Used bytes
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+    
+    /**
+     * Gets the number of lookups that found a block.
+     * 
+     * @return Hit count
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+    
+    /**
+     * Gets the number of lookups that found nothing.
+     * 
+     * @return Miss count
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+    
+    /**
+     * Removes every block.
+     */
+    public synchronized void clear() {
+        blocks.clear();
+        usedBytes = 0;
+    }
+    
+    /**
+     * Drops least recently used blocks until the used bytes fit the budget.
+     * Direct memory is released when the dropped buffers are collected.
+     */
+    private void evict() {
+        Iterator<Block> it = blocks.values().iterator();
+        while (usedBytes > budgetBytes && it.hasNext()) {
+            usedBytes -= it.next().samples.capacity() * 2L;
+            it.remove();
+        }
+    }
+    
+    private static String blockKey(String fileKey, int block) {
+        return fileKey + "#" + block;
+    }
+    
+    /**
+     * A cached run of decoded frames. Immutable once stored, so it can be
+     * read from any thread while the cache keeps changing.
+     */
+    public static final class Block {
+        private final ShortBuffer samples;
+        private final int frames;
+        private final int samplesPerFrame;
+        private final int channels;
+        private final int sampleRate;
+        
+        private Block(ShortBuffer samples, int frames, int samplesPerFrame, int channels, int sampleRate) {
+            this.samples = samples;
+            this.frames = frames;
+            this.samplesPerFrame = samplesPerFrame;
+            this.channels = channels;
+            this.sampleRate = sampleRate;
+        }
+        
+        /**
+         * Copies the samples of one frame of the block.
+         * Uses absolute reads, so concurrent readers do not interfere.
+         * 
+         * @param frame Frame number within the block
+         * @param dest Destination, at least {@link #getSamplesPerFrame()} long
+         * @return Number of samples copied
+         */
+        public int copyFrame(int frame, short[] dest) {
+            int start = frame * samplesPerFrame;
+            for (int i = 0; i < samplesPerFrame; i++) {
+                dest[i] = samples.get(start + i);
+            }
+            return samplesPerFrame;
+        }
+        
+        /**
+         * Gets the number of MP3 frames in the block.
+         * Only the last block of a file can hold fewer than BLOCK_FRAMES.
+         * 
+         * @return Frame count
+         */
+        public int getFrames() {
+            return frames;
+        }
+        
+        /**
+         * Gets the number of interleaved samples per MP3 frame.
+         * 
+         * @return Samples per frame across all channels
+         */
+        public int getSamplesPerFrame() {
+            return samplesPerFrame;
+        }
+        
+        /**
+         * Gets the channel count of the samples.
+         * 
+         * @return Number of interleaved channels
+         */
+        public int getChannels() {
+            return channels;
+        }
+        
+        /**
+         * Gets the sample rate of the samples.
+         * 
+         * @return Sample rate in Hz
+         */
+        public int getSampleRate() {
+            return sampleRate;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.audioapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+/**
+ * Reads the format and the location of the sample data of an uncompressed
+ * WAV or AIFF file. Because every sample frame has the same size, any
+ * position maps to a byte offset by arithmetic, so playback can start
+ * anywhere in the mapped data without reading what comes before it.
+ */
+public final class PcmFileFormat {
+    
+    private static final Logger LOGGER = Logger.getLogger(PcmFileFormat.class.getName());
+    
+    // Chunk identifiers
+    private static final int RIFF = 0x52494646;
+    private static final int WAVE = 0x57415645;
+    private static final int FMT = 0x666D7420;
+    private static final int DATA = 0x64617461;
+    private static final int FORM = 0x464F524D;
+    private static final int AIFF = 0x41494646;
+    private static final int AIFC = 0x41494643;
+    private static final int COMM = 0x434F4D4D;
+    private static final int SSND = 0x53534E44;
+    
+    // AIFC compression types that are plain PCM
+    private static final int NONE = 0x4E4F4E45;
+    private static final int SOWT = 0x736F7774;
+    
+    // WAV format tags
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+    
+    private int sampleRate;
+    private int channels;
+    private int bitsPerSample;
+    private int frameSize;
+    private boolean bigEndian;
+    private boolean signed;
+    private long dataOffset;
+    private long dataLength;
+    
+    private PcmFileFormat() {
+    }
+    
+    /**
+     * Reads the header of a WAV or AIFF file.
+     * 
+     * @param file The audio file
+     * @return The format and data location
+     * @throws IOException If the file cannot be read or does not hold integer PCM
+     */
+    public static PcmFileFormat read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Mp3FrameIndex.HeaderReader reader = new Mp3FrameIndex.HeaderReader(channel);
+            long fileSize = channel.size();
+            
+            PcmFileFormat format = new PcmFileFormat();
+            int container = reader.readInt(0);
+            int type = reader.readInt(8);
+            if (container == RIFF && type == WAVE) {
+                format.parseWave(reader, fileSize);
+            } else if (container == FORM && (type == AIFF || type == AIFC)) {
+                format.parseAiff(reader, fileSize, type == AIFC);
+            } else {
+                throw new IOException("Not a WAV or AIFF file: " + file.getName());
+            }
+            
+            if (format.dataOffset == 0 || format.sampleRate <= 0 || format.channels <= 0) {
+                throw new IOException("No sample data in " + file.getName());
+            }
+            if (format.bitsPerSample != 8 && format.bitsPerSample != 16
+                    && format.bitsPerSample != 24 && format.bitsPerSample != 32) {
+                throw new IOException("Unsupported sample size " + format.bitsPerSample + " in " + file.getName());
+            }
+            
+            // Sizes in the header may be missing or too large for streamed recordings
+            format.frameSize = format.channels * format.bitsPerSample / 8;
+            long available = fileSize - format.dataOffset;
+            if (format.dataLength <= 0 || format.dataLength > available) {
+                format.dataLength = available;
+            }
+            format.dataLength -= format.dataLength % format.frameSize;
+            
+            LOGGER.info("PCM header of " + file.getName() + ": " + format.sampleRate + "Hz, "
+                + format.bitsPerSample + " bit, " + format.channels + " channel(s), "
+                + (format.bigEndian ? "big" : "little") + "-endian, frames: " + format.getFrameCount());
+            
+            return format;
+        }
+    }
+    
+    /**
+     * Walks the chunks of a RIFF WAVE file.
+     */
+    private void parseWave(Mp3FrameIndex.HeaderReader reader, long fileSize) throws IOException {
+        long position = 12;
+        while (position + 8 <= fileSize && dataOffset == 0) {
+            int id = reader.readInt(position);
+            long size = readLe32(reader, position + 4);
+            long body = position + 8;
+            
+            if (id == FMT) {
+                int tag = readLe16(reader, body);
+                if (tag == WAVE_FORMAT_EXTENSIBLE && size >= 26) {
+                    tag = readLe16(reader, body + 24);
+                }
+                if (tag != WAVE_FORMAT_PCM) {
+                    throw new IOException("WAV encoding " + tag + " is not integer PCM");
+                }
+                channels = readLe16(reader, body + 2);
+                sampleRate = (int) readLe32(reader, body + 4);
+                bitsPerSample = readLe16(reader, body + 14);
+            } else if (id == DATA) {
+                if (channels == 0) {
+                    throw new IOException("WAV data chunk before its format chunk");
+                }
+                dataOffset = body;
+                dataLength = size;
+            }
+            
+            // Chunks are padded to an even size
+            position = body + size + (size & 1);
+        }
+        bigEndian = false;
+        signed = bitsPerSample > 8;
+    }
+    
+    /**
+     * Walks the chunks of an AIFF or AIFF-C file.
+     */
+    private void parseAiff(Mp3FrameIndex.HeaderReader reader, long fileSize, boolean compressed) throws IOException {
+        bigEndian = true;
+        signed = true;
+        
+        long position = 12;
+        while (position + 8 <= fileSize) {
+            int id = reader.readInt(position);
+            long size = reader.readInt(position + 4) & 0xFFFFFFFFL;
+            long body = position + 8;
+            
+            if (id == COMM) {
+                channels = reader.readInt(body) >>> 16;
+                bitsPerSample = reader.readInt(body + 6) >>> 16;
+                sampleRate = (int) readExtended(reader, body + 8);
+                if (compressed && size >= 22) {
+                    int compression = reader.readInt(body + 18);
+                    if (compression == SOWT) {
+                        bigEndian = false;
+                    } else if (compression != NONE) {
+                        throw new IOException("AIFF-C compression is not plain PCM");
+                    }
+                }
+            } else if (id == SSND) {
+                long skip = reader.readInt(body) & 0xFFFFFFFFL;
+                dataOffset = body + 8 + skip;
+                dataLength = size - 8 - skip;
+            }
+            
+            position = body + size + (size & 1);
+        }
+    }
+    
+    private static int readLe16(Mp3FrameIndex.HeaderReader reader, long position) throws IOException {
+        return reader.readByte(position) | (reader.readByte(position + 1) << 8);
+    }
+    
+    private static long readLe32(Mp3FrameIndex.HeaderReader reader, long position) throws IOException {
+        return readLe16(reader, position) | ((long) readLe16(reader, position + 2) << 16);
+    }
+    
+    /**
+     * Reads the 80-bit extended float AIFF uses for the sample rate.
+     */
+    private static double readExtended(Mp3FrameIndex.HeaderReader reader, long position) throws IOException {
+        int exponent = (reader.readInt(position) >>> 16) & 0x7FFF;
+        long mantissa = ((long) reader.readInt(position + 2) << 32) | (reader.readInt(position + 6) & 0xFFFFFFFFL);
+        return Math.scalb((double) (mantissa >>> 11), exponent - 16383 - 52);
+    }
+    
+    /**
+     * Gets the byte offset of a sample frame.
+     * 
+     * @param frame Sample frame, clamped to the data
+     * @return Byte offset from the start of the file
+     */
+    public long offsetOf(long frame) {
+        return dataOffset + Math.max(0, Math.min(frame, getFrameCount())) * frameSize;
+    }
+    
+    /**
+     * Gets the sample rate.
+     * 
+     * @return Sample rate in Hz
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+    
+    /**
+     * Gets the number of channels.
+     * 
+     * @return Channel count
+     */
+    public int getChannels() {
+        return channels;
+    }
+    
+    /**
+     * Gets the sample size.
+     * 
+     * @return Bits per sample
+     */
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+    
+    /**
+     * Gets the size of one sample frame across all channels.
+     * 
+     * @return Frame size in bytes
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+    
+    /**
+     * Checks the byte order of the samples.
+     * 
+     * @return true for big-endian (AIFF), false for little-endian (WAV)
+     */
+    public boolean isBigEndian() {
+        return bigEndian;
+    }
+    
+    /**
+     * Checks whether samples are signed. Only 8-bit WAV samples are not.
+     * 
+     * @return true for signed samples
+     */
+    public boolean isSigned() {
+        return signed;
+    }
+    
+    /**
+     * Gets the offset of the first sample.
+     * 
+     * @return Byte offset from the start of the file
+     */
+    public long getDataOffset() {
+        return dataOffset;
+    }
+    
+    /**
+     * Gets the number of sample frames in the data chunk.
+     * 
+     * @return Frame count
+     */
+    public long getFrameCount() {
+        return dataLength / frameSize;
+    }
+    
+    /**
+     * Gets the duration of the data.
+     * 
+     * @return Duration in milliseconds
+     */
+    public int getDurationMillis() {
+        return (int) (getFrameCount() * 1000 / sampleRate);
+    }
+}
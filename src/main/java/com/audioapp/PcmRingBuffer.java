@@ -0,0 +1,162 @@
+package com.audioapp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free ring buffer of interleaved 16-bit PCM samples between exactly
+ * one producer (the decoder) and one consumer (the audio output).
+ * The sample array is allocated once; writes and reads only copy samples
+ * and publish a new sequence number, so neither side ever blocks the other.
+ * Both sides move whole frames only, so a read never ends partway through
+ * a frame even when the channel count does not divide the capacity.
+ */
+public final class PcmRingBuffer {
+    
+    private final short[] buffer;
+    private final int mask;
+    private final int channels;
+    
+    // Total samples ever written and read, only advanced by their owning side
+    private final AtomicLong writeSequence = new AtomicLong();
+    private final AtomicLong readSequence = new AtomicLong();
+    
+    // Set by the producer once no more samples will be written
+    private volatile boolean endOfStream = false;
+    
+    /**
+     * Creates a ring buffer holding at least the given number of samples.
+     * The capacity is rounded up to a power of two.
+     * 
+     * @param minCapacity Minimum number of samples
+     * @param channels Samples per frame
+     */
+    public PcmRingBuffer(int minCapacity, int channels) {
+        int capacity = Integer.highestOneBit(Math.max(2, Math.max(minCapacity, 2 * channels) - 1)) << 1;
+        buffer = new short[capacity];
+        mask = capacity - 1;
+        this.channels = channels;
+    }
+    
+    /**
+     * Gets the number of samples the buffer can hold.
+     * 
+     * @return Capacity in samples
+     */
+    public int capacity() {
+        return buffer.length;
+    }
+    
+    /**
+     * Gets the number of samples waiting to be read.
+     * 
+     * @return Samples available to the consumer
+     */
+    public int available() {
+        return (int) (writeSequence.get() - readSequence.get());
+    }
+    
+    /**
+     * Gets the number of samples that can be written without overwriting.
+     * 
+     * @return Free space in samples
+     */
+    public int free() {
+        return buffer.length - available();
+    }
+    
+    /**
+     * Copies as many whole frames as fit into the buffer. Producer side only.
+     * 
+     * @param samples Source samples
+     * @param offset Index of the first sample to copy
+     * @param length Number of samples to copy, a multiple of the channel count
+     * @return Number of samples actually written
+     */
+    public int write(short[] samples, int offset, int length) {
+        long write = writeSequence.get();
+        int free = buffer.length - (int) (write - readSequence.get());
+        int count = length <= free ? length : free - free % channels;
+        if (count <= 0) {
+            return 0;
+        }
+        
+        int start = (int) (write & mask);
+        int first = Math.min(count, buffer.length - start);
+        System.arraycopy(samples, offset, buffer, start, first);
+        System.arraycopy(samples, offset + first, buffer, 0, count - first);
+        
+        // Publish after the copy so the consumer never sees unwritten samples
+        writeSequence.lazySet(write + count);
+        return count;
+    }
+    
+    /**
+     * Copies up to the requested number of samples out of the buffer,
+     * rounded down to whole frames. Consumer side only.
+     * 
+     * @param samples Destination array
+     * @param offset Index to start writing at
+     * @param length Maximum number of samples to read
+     * @return Number of samples actually read
+     */
+    public int read(short[] samples, int offset, int length) {
+        long read = readSequence.get();
+        int count = Math.min(length, (int) (writeSequence.get() - read));
+        count -= count % channels;
+        if (count <= 0) {
+            return 0;
+        }
+        
+        int start = (int) (read & mask);
+        int first = Math.min(count, buffer.length - start);
+        System.arraycopy(buffer, start, samples, offset, first);
+        System.arraycopy(buffer, 0, samples, offset + first, count - first);
+        
+        // Release the space only after the samples were copied out
+        readSequence.lazySet(read + count);
+        return count;
+    }
+    
+    /**
+     * Gets the total number of samples read since the buffer was created.
+     * 
+     * @return Samples consumed
+     */
+    public long getReadSequence() {
+        return readSequence.get();
+    }
+    
+    /**
+     * Gets the total number of samples written since the buffer was created.
+     * 
+     * @return Samples produced
+     */
+    public long getWriteSequence() {
+        return writeSequence.get();
+    }
+    
+    /**
+     * Marks that the producer has written its last sample.
+     */
+    public void markEndOfStream() {
+        endOfStream = true;
+    }
+    
+    /**
+     * Checks whether the producer has finished.
+     * 
+     * @return true if no more samples will be written
+     */
+    public boolean isEndOfStream() {
+        return endOfStream;
+    }
+    
+    /**
+     * Checks whether the producer has finished and every sample was read.
+     * 
+     * @return true if the stream is fully consumed
+     */
+    public boolean isDrained() {
+        return endOfStream && available() == 0;
+    }
+}
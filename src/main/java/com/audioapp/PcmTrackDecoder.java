@@ -0,0 +1,99 @@
+package com.audioapp;
+
+import java.nio.ByteOrder;
+
+/**
+ * Plays the data chunk of an uncompressed WAV or AIFF file straight from
+ * its mapping. Nothing is decoded: 16-bit samples are bulk-copied into a
+ * transfer array allocated once, other sample sizes are converted to 16
+ * bits on the way. Starting at a position is a multiplication.
+ */
+final class PcmTrackDecoder extends TrackDecoder {
+    
+    // Sample frames copied per chunk
+    private static final int CHUNK_FRAMES = 4096;
+    
+    private final MappedAudioSource.MappedInputStream in;
+    private final PcmFileFormat format;
+    private final ByteOrder order;
+    private final short[] samples;
+    private final byte[] bytes;
+    
+    // Sample frame the next chunk starts at
+    private long nextFrame;
+    
+    /**
+     * Creates a decoder positioned at a sample frame of the track.
+     * 
+     * @param source The mapped audio file
+     * @param format The file's format and data location
+     * @param startFrame Sample frame to start from
+     */
+    PcmTrackDecoder(MappedAudioSource source, PcmFileFormat format, long startFrame) {
+        this.format = format;
+        this.order = format.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        this.nextFrame = Math.max(0, Math.min(startFrame, format.getFrameCount()));
+        this.in = source.newInputStream(format.offsetOf(nextFrame));
+        
+        sampleRate = format.getSampleRate();
+        channels = format.getChannels();
+        samples = new short[CHUNK_FRAMES * channels];
+        bytes = format.getBitsPerSample() == 16 ? null : new byte[CHUNK_FRAMES * format.getFrameSize()];
+    }
+    
+    @Override
+    protected boolean decodeChunk() {
+        int frames = (int) Math.min(CHUNK_FRAMES, format.getFrameCount() - nextFrame);
+        if (frames <= 0) {
+            return false;
+        }
+        
+        int count = frames * channels;
+        if (bytes == null) {
+            if (in.readShorts(samples, 0, count, order) < count) {
+                return false;
+            }
+        } else {
+            int length = frames * format.getFrameSize();
+            if (in.read(bytes, 0, length) < length) {
+                return false;
+            }
+            convert(count);
+        }
+        
+        buffer = samples;
+        offset = 0;
+        length = count;
+        position = nextFrame;
+        nextFrame += frames;
+        return true;
+    }
+    
+    /**
+     * Converts 8, 24 and 32-bit samples to 16 bits, keeping the most
+     * significant bits.
+     */
+    private void convert(int count) {
+        int width = format.getBitsPerSample() / 8;
+        boolean big = format.isBigEndian();
+        if (width == 1) {
+            int bias = format.isSigned() ? 0 : 0x80;
+            for (int i = 0; i < count; i++) {
+                samples[i] = (short) (((bytes[i] & 0xFF) - bias) << 8);
+            }
+            return;
+        }
+        
+        // The two most significant bytes are the first two (big-endian) or the last two
+        int high = big ? 0 : width - 1;
+        int low = big ? 1 : width - 2;
+        for (int i = 0, b = 0; i < count; i++, b += width) {
+            samples[i] = (short) ((bytes[b + high] << 8) | (bytes[b + low] & 0xFF));
+        }
+    }
+    
+    @Override
+    void close() {
+        // The stream is a view of the mapped file, nothing to release
+    }
+}
@@ -0,0 +1,105 @@
+package com.audioapp;
+
+/**
+ * Playback position derived from the sample frames the output line has
+ * actually played, rather than from wall-clock time. Readers get the
+ * position with a single volatile read; the output thread advances it
+ * after every write to the line.
+ */
+public final class PlaybackClock {
+    
+    // Position of the audible sample, the only field readers touch
+    private volatile long positionMicros = 0;
+    
+    // Completed tracks, lets pollers detect an end of track exactly once
+    private volatile long completionCount = 0;
+    
+    // Writer-side state, guarded by this
+    private long startMicros = 0;
+    private int sampleRate = 44100;
+    private double speed = 1.0;
+    
+    /**
+     * Starts counting from a position for a stream with the given rate.
+     * 
+     * @param startMillis Position of the first sample that will be played
+     * @param rate Sample rate of the output line in Hz
+     */
+    public synchronized void start(int startMillis, int rate) {
+        start(startMillis, rate, 1.0);
+    }
+    
+    /**
+     * Starts counting from a position for a time-stretched stream, where
+     * each played frame covers speed frames of the track.
+     * 
+     * @param startMillis Position of the first sample that will be played
+     * @param rate Sample rate of the output line in Hz
+     * @param speed Playback speed, 1.0 is normal
+     */
+    public synchronized void start(int startMillis, int rate, double speed) {
+        startMicros = startMillis * 1000L;
+        sampleRate = rate;
+        this.speed = speed;
+        positionMicros = startMicros;
+    }
+    
+    /**
+     * Moves the clock to a position without playing, for example after a
+     * stop or a seek while paused.
+     * 
+     * @param millis The new position in milliseconds
+     */
+    public synchronized void setPosition(int millis) {
+        startMicros = millis * 1000L;
+        positionMicros = startMicros;
+    }
+    
+    /**
+     * Advances the clock to the number of frames played since start.
+     * Called by the output thread.
+     * 
+     * @param framesPlayed Frames played by the line since the clock was started
+     */
+    public synchronized void update(long framesPlayed) {
+        positionMicros = startMicros + (long) (framesPlayed * 1_000_000L * speed / sampleRate);
+    }
+    
+    /**
+     * Records that the track played out to its last sample.
+     * 
+     * @param endMillis The final position of the track
+     */
+    public synchronized void markCompleted(int endMillis) {
+        setPosition(endMillis);
+        completionCount++;
+    }
+    
+    /**
+     * Gets the position of the sample currently being heard.
+     * 
+     * @return Position in milliseconds
+     */
+    public int getPositionMillis() {
+        return (int) (positionMicros / 1000);
+    }
+    
+    /**
+     * Gets the position of the sample currently being heard.
+     * 
+     * @return Position in microseconds
+     */
+    public long getPositionMicros() {
+        return positionMicros;
+    }
+    
+    /**
+     * Gets the number of tracks that have played to their end. A change in
+     * this value means exactly one new end of track.
+     * 
+     * @return Completion count
+     */
+    public long getCompletionCount() {
+        return completionCount;
+    }
+}
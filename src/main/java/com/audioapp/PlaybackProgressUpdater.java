@@ -8,6 +8,7 @@ import java.util.logging.Logger;
 /**
  * Thread that updates the UI elements to reflect playback progress.
  * This includes updating the progress bar and status labels.
+ * Position and end of track come from the player's sample-accurate clock.
  */
 public class PlaybackProgressUpdater extends Thread {
     
@@ -18,7 +19,10 @@ public class PlaybackProgressUpdater extends Thread {
     private JLabel durationLabel;
     private AudioPlayerUI playerUI;
     private volatile boolean running = true;
-    private boolean wasPlaying = false;
+    
+    // Last values pushed to the UI, to skip redundant repaints
+    private int lastPosition = -1;
+    private int lastDuration = -1;
     
     /**
      * Constructor initializes the updater with UI components to update.
@@ -59,55 +63,28 @@ public class PlaybackProgressUpdater extends Thread {
      */
     @Override
     public void run() {
-        int elapsedTime = 0;
-        long startTime = System.currentTimeMillis();
+        PlaybackClock clock = audioPlayer.getClock();
+        long lastCompletion = clock.getCompletionCount();
         
         while (running) {
-            if (!audioPlayer.isPaused() && !audioPlayer.isStopped()) {
-                wasPlaying = true;
-                
-                // Calculate elapsed time
-                elapsedTime = (int) (System.currentTimeMillis() - startTime);
-                
-                // Update player's internal position
-                audioPlayer.updatePosition(elapsedTime);
-                
-                // Update UI
-                updateUI(elapsedTime);
-                
-                // Check if we've reached the end of the track
-                if (elapsedTime >= audioPlayer.getTotalDuration()) {
-                    // Notify UI that playback has completed
-                    if (playerUI != null) {
-                        SwingUtilities.invokeLater(() -> {
-                            playerUI.onPlaybackComplete();
-                        });
-                    }
-                    
-                    // Reset elapsed time and start time
-                    elapsedTime = 0;
-                    startTime = System.currentTimeMillis();
-                }
-            } else if (audioPlayer.isPaused()) {
-                // When paused, update start time for when playback resumes
-                startTime = System.currentTimeMillis() - elapsedTime;
-                wasPlaying = false;
-            } else if (audioPlayer.isStopped()) {
-                // When stopped naturally (not by user)
-                if (wasPlaying && elapsedTime >= audioPlayer.getTotalDuration() * 0.95) {
-                    // If we were playing and close to the end, we've completed playback
-                    if (playerUI != null) {
-                        SwingUtilities.invokeLater(() -> {
-                            playerUI.onPlaybackComplete();
-                        });
-                    }
-                    wasPlaying = false;
+            // Position of the sample the line is actually playing
+            int position = clock.getPositionMillis();
+            int duration = audioPlayer.getTotalDuration();
+            if (position != lastPosition || duration != lastDuration) {
+                lastPosition = position;
+                lastDuration = duration;
+                updateUI(position);
+            }
+            
+            // The clock counts each track that played out to its last sample
+            long completion = clock.getCompletionCount();
+            if (completion != lastCompletion) {
+                lastCompletion = completion;
+                if (playerUI != null) {
+                    SwingUtilities.invokeLater(() -> {
+                        playerUI.onPlaybackComplete();
+                    });
                 }
-                
-                // Reset when stopped
-                elapsedTime = 0;
-                startTime = System.currentTimeMillis();
-                updateUI(0);
             }
             
             try {
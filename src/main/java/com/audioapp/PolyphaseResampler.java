@@ -0,0 +1,247 @@
+package com.audioapp;
+
+import java.util.Arrays;
+
+/**
+ * Converts interleaved 16-bit PCM from one sample rate to another with a
+ * polyphase windowed-sinc filter. The ratio is reduced to L/M and a bank
+ * of L sub-filters is computed once, so each output sample is a single
+ * short dot product. Input and output buffers are reused; after the first
+ * few calls processing allocates nothing.
+ */
+public final class PolyphaseResampler {
+    
+    // Filter length per phase, scaled up when the filter also has to
+    // remove content above the output Nyquist frequency
+    private static final int BASE_TAPS = 32;
+    
+    // Passband edge as a fraction of the lower of the two Nyquist frequencies
+    private static final double PASSBAND = 0.95;
+    
+    // Kaiser window shape, about 80 dB of stopband attenuation
+    private static final double KAISER_BETA = 8.0;
+    
+    // Ratios with more phases than this reuse the nearest computed phase
+    private static final int MAX_PHASES = 1024;
+    
+    private final int inputRate;
+    private final int outputRate;
+    private final int channels;
+    
+    // Output advances by step/interpolation input frames per sample frame
+    private final int interpolation;
+    private final int step;
+    
+    // Filter bank, phases * taps coefficients
+    private final int phases;
+    private final int taps;
+    private final float[] filters;
+    
+    // Input not yet consumed, including the history the filter looks back on
+    private short[] window = new short[0];
+    private int windowFrames;
+    
+    // First input frame under the filter, and the fractional position in 1/interpolation units
+    private int index;
+    private int phase;
+    
+    // Samples produced by the last call
+    private short[] output = new short[0];
+    
+    /**
+     * Creates a resampler and computes its filter bank.
+     * 
+     * @param inputRate Sample rate of the input in Hz
+     * @param outputRate Sample rate of the output in Hz
+     * @param channels Number of interleaved channels
+     */
+    public PolyphaseResampler(int inputRate, int outputRate, int channels) {
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+        this.channels = channels;
+        
+        int divisor = gcd(inputRate, outputRate);
+        interpolation = outputRate / divisor;
+        step = inputRate / divisor;
+        
+        // When downsampling the cutoff moves down and the filter gets longer
+        double ratio = Math.min(1.0, (double) outputRate / inputRate);
+        double cutoff = ratio * PASSBAND;
+        taps = 2 * (int) Math.ceil(BASE_TAPS / 2.0 / ratio);
+        phases = Math.min(interpolation, MAX_PHASES);
+        filters = new float[phases * taps];
+        
+        int center = taps / 2 - 1;
+        double half = taps / 2.0;
+        double norm = besselI0(KAISER_BETA);
+        for (int p = 0; p < phases; p++) {
+            double fraction = (double) p / phases;
+            double sum = 0;
+            for (int k = 0; k < taps; k++) {
+                double distance = k - center - fraction;
+                double x = distance / half;
+                double window = Math.abs(x) >= 1 ? 0 : besselI0(KAISER_BETA * Math.sqrt(1 - x * x)) / norm;
+                double value = cutoff * sinc(cutoff * distance) * window;
+                filters[p * taps + k] = (float) value;
+                sum += value;
+            }
+            
+            // Unity gain at DC for every phase
+            for (int k = 0; k < taps; k++) {
+                filters[p * taps + k] /= (float) sum;
+            }
+        }
+        
+        reset();
+    }
+    
+    /**
+     * Resamples a block of input. The output lags the input by half the
+     * filter length; {@link #flush()} releases the remainder at the end.
+     * 
+     * @param samples Interleaved input samples
+     * @param offset Index of the first sample
+     * @param length Number of samples, a multiple of the channel count
+     * @return Number of samples written to {@link #getOutput()}
+     */
+    public int process(short[] samples, int offset, int length) {
+        int frames = length / channels;
+        ensureWindow(frames);
+        System.arraycopy(samples, offset, window, windowFrames * channels, frames * channels);
+        windowFrames += frames;
+        return run();
+    }
+    
+    /**
+     * Produces the output still held back by the filter, as if the input
+     * were followed by silence, and starts over.
+     * 
+     * @return Number of samples written to {@link #getOutput()}
+     */
+    public int flush() {
+        int frames = taps / 2;
+        ensureWindow(frames);
+        Arrays.fill(window, windowFrames * channels, (windowFrames + frames) * channels, (short) 0);
+        windowFrames += frames;
+        int count = run();
+        reset();
+        return count;
+    }
+    
+    /**
+     * Discards buffered input, for a jump in the stream.
+     */
+    public void reset() {
+        // Silence before the first sample, so the first output is centered on it
+        windowFrames = taps / 2 - 1;
+        ensureWindow(0);
+        Arrays.fill(window, 0, windowFrames * channels, (short) 0);
+        index = 0;
+        phase = 0;
+    }
+    
+    /**
+     * Gets the samples produced by the last call.
+     * 
+     * @return Output buffer, valid until the next call
+     */
+    public short[] getOutput() {
+        return output;
+    }
+    
+    /**
+     * Gets the input sample rate.
+     * 
+     * @return Sample rate in Hz
+     */
+    public int getInputRate() {
+        return inputRate;
+    }
+    
+    /**
+     * Gets the output sample rate.
+     * 
+     * @return Sample rate in Hz
+     */
+    public int getOutputRate() {
+        return outputRate;
+    }
+    
+    /**
+     * Filters every output frame the buffered input allows, then drops the
+     * input the filter has moved past.
+     */
+    private int run() {
+        int maxFrames = (int) ((long) windowFrames * interpolation / step) + 1;
+        if (output.length < maxFrames * channels) {
+            output = new short[maxFrames * channels];
+        }
+        
+        int count = 0;
+        while (index + taps <= windowFrames) {
+            int p = phases == interpolation ? phase : (int) ((long) phase * phases / interpolation);
+            int base = p * taps;
+            int start = index * channels;
+            for (int c = 0; c < channels; c++) {
+                float sum = 0;
+                for (int k = 0, i = start + c; k < taps; k++, i += channels) {
+                    sum += window[i] * filters[base + k];
+                }
+                output[count++] = GainStage.clip(sum);
+            }
+            
+            phase += step;
+            index += phase / interpolation;
+            phase %= interpolation;
+        }
+        
+        // Keep the input still under the filter, a large step may skip past it all
+        int consumed = Math.min(index, windowFrames);
+        System.arraycopy(window, consumed * channels, window, 0, (windowFrames - consumed) * channels);
+        windowFrames -= consumed;
+        index -= consumed;
+        return count;
+    }
+    
+    /**
+     * Grows the input window to hold more frames.
+     */
+    private void ensureWindow(int frames) {
+        int needed = (windowFrames + frames) * channels;
+        if (window.length < needed) {
+            window = Arrays.copyOf(window, Math.max(needed, window.length * 2));
+        }
+    }
+    
+    private static double sinc(double x) {
+        if (Math.abs(x) < 1e-9) {
+            return 1.0;
+        }
+        return Math.sin(Math.PI * x) / (Math.PI * x);
+    }
+    
+    /**
+     * Zeroth-order modified Bessel function, for the Kaiser window.
+     */
+    private static double besselI0(double x) {
+        double sum = 1.0;
+        double term = 1.0;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+    
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
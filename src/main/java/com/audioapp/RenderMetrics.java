@@ -0,0 +1,162 @@
+package com.audioapp;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and timings of the video render pipeline, to tell where a
+ * stutter comes from: an uneven frame interval points at decoding, long
+ * copies at memory bandwidth, long paints at Java2D and the window system.
+ * Frames are counted as VLC delivers them, as they are painted and as
+ * they are replaced unpainted. Timings go into {@link LatencyHistogram}s,
+ * so recording costs a few atomic adds per frame.
+ */
+public final class RenderMetrics {
+    
+    // Gaps longer than this are pauses or seeks, not frame intervals
+    private static final long MAX_INTERVAL_NANOS = 1_000_000_000L;
+    
+    // Window over which the painted frame rate is measured
+    private static final long FPS_WINDOW_NANOS = 500_000_000L;
+    
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesPainted = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    
+    private final LatencyHistogram frameInterval = new LatencyHistogram();
+    private final LatencyHistogram copyTime = new LatencyHistogram();
+    private final LatencyHistogram paintTime = new LatencyHistogram();
+    
+    // Last delivery, only used by VLC's thread
+    private long lastReceivedNanos;
+    
+    // Frame rate window, only used by the render thread
+    private long windowStartNanos;
+    private long windowFrames;
+    private volatile double framesPerSecond;
+    
+    /**
+     * Counts a frame delivered by VLC and records the time since the last one.
+     * 
+     * @param nowNanos Delivery time from {@link System#nanoTime()}
+     */
+    void frameReceived(long nowNanos) {
+        framesReceived.incrementAndGet();
+        long interval = nowNanos - lastReceivedNanos;
+        if (lastReceivedNanos != 0 && interval < MAX_INTERVAL_NANOS) {
+            frameInterval.record(interval);
+        }
+        lastReceivedNanos = nowNanos;
+    }
+    
+    /**
+     * Counts a frame replaced before it was painted.
+     */
+    void frameDropped() {
+        framesDropped.incrementAndGet();
+    }
+    
+    /**
+     * Counts a painted frame and records how long it took.
+     * 
+     * @param copyNanos Time spent copying the frame
+     * @param paintNanos Time spent drawing it
+     * @param nowNanos Time painting finished, from {@link System#nanoTime()}
+     */
+    void framePainted(long copyNanos, long paintNanos, long nowNanos) {
+        framesPainted.incrementAndGet();
+        copyTime.record(copyNanos);
+        paintTime.record(paintNanos);
+        
+        windowFrames++;
+        if (windowStartNanos == 0) {
+            windowStartNanos = nowNanos;
+        } else if (nowNanos - windowStartNanos >= FPS_WINDOW_NANOS) {
+            framesPerSecond = windowFrames * 1e9 / (nowNanos - windowStartNanos);
+            windowStartNanos = nowNanos;
+            windowFrames = 0;
+        }
+    }
+    
+    /**
+     * Gets the number of frames VLC delivered.
+     * 
+     * @return Frames received
+     */
+    public long getFramesReceived() {
+        return framesReceived.get();
+    }
+    
+    /**
+     * Gets the number of frames drawn on the canvas.
+     * 
+     * @return Frames painted
+     */
+    public long getFramesPainted() {
+        return framesPainted.get();
+    }
+    
+    /**
+     * Gets the number of frames replaced by a newer one before they could be painted.
+     * 
+     * @return Frames dropped
+     */
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+    
+    /**
+     * Gets the painted frame rate over the last half second or so.
+     * 
+     * @return Frames per second
+     */
+    public double getFramesPerSecond() {
+        return framesPerSecond;
+    }
+    
+    /**
+     * Gets the times between frames delivered by VLC.
+     * 
+     * @return Frame interval histogram
+     */
+    public LatencyHistogram getFrameIntervalHistogram() {
+        return frameInterval;
+    }
+    
+    /**
+     * Gets the times spent copying frames out of the decode buffers.
+     * 
+     * @return Copy time histogram
+     */
+    public LatencyHistogram getCopyTimeHistogram() {
+        return copyTime;
+    }
+    
+    /**
+     * Gets the times spent drawing frames on the canvas.
+     * 
+     * @return Paint time histogram
+     */
+    public LatencyHistogram getPaintTimeHistogram() {
+        return paintTime;
+    }
+    
+    /**
+     * Clears all counters and histograms.
+     */
+    public void reset() {
+        framesReceived.set(0);
+        framesPainted.set(0);
+        framesDropped.set(0);
+        frameInterval.reset();
+        copyTime.reset();
+        paintTime.reset();
+    }
+    
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%.1f fps, %d received, %d painted, %d dropped; interval %s; copy %s; paint %s",
+                framesPerSecond, getFramesReceived(), getFramesPainted(), getFramesDropped(),
+                frameInterval, copyTime, paintTime);
+    }
+}
@@ -0,0 +1,141 @@
+package com.audioapp;
+
+/**
+ * Source of interleaved 16-bit PCM for one track, read chunk by chunk by
+ * the AudioPlayer's decoder thread. Subclasses decode a particular format;
+ * this class holds the current chunk and lets the head of a track be
+ * decoded ahead of time so a gapless transition does not wait for it.
+ */
+abstract class TrackDecoder {
+    
+    // The chunk returned by the last call to next(), filled in by decodeChunk()
+    protected short[] buffer;
+    protected int offset;
+    protected int length;
+    protected long position = -1;
+    
+    // Stream format, known after the first decoded chunk
+    protected int sampleRate;
+    protected int channels;
+    
+    // Decoded head of the track, returned before decoding continues
+    private short[] head;
+    private int headLength;
+    private long headPosition;
+    
+    /**
+     * Decodes the next chunk into buffer, offset, length and position.
+     * 
+     * @return false once the end of the track is reached
+     * @throws Exception If the stream cannot be decoded
+     */
+    protected abstract boolean decodeChunk() throws Exception;
+    
+    /**
+     * Releases the decoder's stream. Shared resources such as a mapped
+     * file stay open.
+     */
+    abstract void close();
+    
+    /**
+     * Decodes the head of the track into memory so the first call to
+     * next() returns without touching the stream.
+     * 
+     * @param millis Amount of audio to decode ahead
+     * @throws Exception If the stream cannot be decoded
+     */
+    void preroll(int millis) throws Exception {
+        int target = 0;
+        while (decodeChunk()) {
+            if (head == null) {
+                target = (int) ((long) sampleRate * channels * millis / 1000);
+                head = new short[Math.max(target, length)];
+                headPosition = position;
+            }
+            if (headLength + length > head.length) {
+                short[] grown = new short[headLength + length];
+                System.arraycopy(head, 0, grown, 0, headLength);
+                head = grown;
+            }
+            System.arraycopy(buffer, offset, head, headLength, length);
+            headLength += length;
+            if (headLength >= target) {
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Decodes the next chunk of audio.
+     * 
+     * @return false once the end of the track is reached
+     * @throws Exception If the stream cannot be decoded
+     */
+    boolean next() throws Exception {
+        if (headLength > 0) {
+            buffer = head;
+            offset = 0;
+            length = headLength;
+            position = headPosition;
+            head = null;
+            headLength = 0;
+            return true;
+        }
+        return decodeChunk();
+    }
+    
+    /**
+     * Gets the samples decoded by the last call to next().
+     * 
+     * @return Sample array, valid until the next call
+     */
+    short[] getBuffer() {
+        return buffer;
+    }
+    
+    /**
+     * Gets the index of the first sample of the last chunk.
+     * 
+     * @return Offset into the buffer
+     */
+    int getOffset() {
+        return offset;
+    }
+    
+    /**
+     * Gets the number of samples in the last chunk.
+     * 
+     * @return Length in samples
+     */
+    int getLength() {
+        return length;
+    }
+    
+    /**
+     * Gets the position of the last chunk within the track in sample frames,
+     * counted the same way as seek positions.
+     * 
+     * @return First sample frame of the chunk, or -1 if unknown
+     */
+    long getPosition() {
+        return position;
+    }
+    
+    /**
+     * Gets the output sample rate, known after the first decoded chunk.
+     * 
+     * @return Sample rate in Hz
+     */
+    int getSampleRate() {
+        return sampleRate;
+    }
+    
+    /**
+     * Gets the output channel count, known after the first decoded chunk.
+     * 
+     * @return Number of interleaved channels
+     */
+    int getChannels() {
+        return channels;
+    }
+}
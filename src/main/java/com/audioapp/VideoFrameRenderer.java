@@ -0,0 +1,569 @@
+package com.audioapp;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.PointerByReference;
+import uk.co.caprica.vlcj.binding.internal.libvlc_display_callback_t;
+import uk.co.caprica.vlcj.binding.internal.libvlc_lock_callback_t;
+import uk.co.caprica.vlcj.binding.internal.libvlc_unlock_callback_t;
+import uk.co.caprica.vlcj.binding.internal.libvlc_video_cleanup_cb;
+import uk.co.caprica.vlcj.binding.internal.libvlc_video_format_cb;
+import uk.co.caprica.vlcj.binding.lib.LibVlc;
+import uk.co.caprica.vlcj.player.base.MediaPlayer;
+import uk.co.caprica.vlcj.player.embedded.videosurface.VideoSurface;
+import uk.co.caprica.vlcj.player.embedded.videosurface.VideoSurfaceAdapters;
+
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands video frames from VLC's decoder thread to a render thread through
+ * three native frame buffers. VLC's video output copies each picture into
+ * the back buffer, and on display the back buffer is swapped with the
+ * middle one; the render thread swaps the middle buffer with the front
+ * one whenever it holds a new frame, copies it into the image it paints
+ * and draws it. VLC is given a single picture to lock, so the buffer it
+ * fills is always the one display publishes.
+ * Neither side waits for the other: a frame the render thread did not get
+ * to in time is replaced by the next one and counted as dropped, without
+ * the JVM ever touching it. A painted frame is copied once, by the render
+ * thread, on its way to the screen.
+ * <p>
+ * In adaptive mode VLC is asked for frames the size of the canvas, so it
+ * scales while decoding and only the pixels shown pass through the JVM.
+ * Negotiating again means VLC recreates its video decoder, and the
+ * picture holds still until the next keyframe, which can be seconds
+ * away in long-GOP files. So during playback it is only done when the
+ * canvas has become much smaller than the buffers and stays that way,
+ * which is where it saves the most work. A larger canvas is painted
+ * from the smaller frames, scaled up, until the next file or playback
+ * restart negotiates its size.
+ * <p>
+ * Frame buffers come from a {@link FrameBufferPool} and go back to it when
+ * the size changes, and the video surface is created once, so moving
+ * through a playlist does not allocate new frames for every file.
+ * <p>
+ * Frame counts and copy and paint times go into {@link RenderMetrics},
+ * which can also be drawn over the video.
+ */
+final class VideoFrameRenderer {
+    
+    private static final Logger LOGGER = Logger.getLogger(VideoFrameRenderer.class.getName());
+    
+    // Set in the middle slot while it holds a frame that has not been painted
+    private static final int FRESH = 4;
+    
+    // How long the render thread sleeps without frames before checking whether it should stop
+    private static final long IDLE_NANOS = 100_000_000L;
+    
+    // 32-bit RGB, the byte order of a little-endian TYPE_INT_RGB pixel
+    private static final byte[] CHROMA = "RV32".getBytes(StandardCharsets.US_ASCII);
+    
+    // Adaptive mode: relative shrink that is worth a new format, how long
+    // the canvas has to keep its size first, and the least time between formats
+    private static final double RESIZE_THRESHOLD = 0.2;
+    private static final long RESIZE_SETTLE_NANOS = 300_000_000L;
+    private static final long MIN_RENEGOTIATION_NANOS = 1_000_000_000L;
+    
+    // Smallest buffer side asked for
+    private static final int MIN_SIZE = 16;
+    
+    // Statistics overlay: refresh interval, background and padding
+    private static final long OVERLAY_REFRESH_NANOS = 500_000_000L;
+    private static final Color OVERLAY_BACKGROUND = new Color(0, 0, 0, 160);
+    private static final int OVERLAY_MARGIN = 4;
+    
+    /**
+     * Three native frame buffers of one size. The back index is only used
+     * by the decoder and the front index only by the render thread; the
+     * middle index and its FRESH flag are swapped atomically between them.
+     */
+    private static final class Frames {
+        final int width;
+        final int height;
+        final ByteBuffer[] buffers = new ByteBuffer[3];
+        final IntBuffer[] views = new IntBuffer[3];
+        final Pointer[] planes = new Pointer[3];
+        final AtomicInteger middle = new AtomicInteger(2);
+        int back = 0;
+        int front = 1;
+        
+        Frames(int width, int height, FrameBufferPool pool) {
+            this.width = width;
+            this.height = height;
+            for (int i = 0; i < 3; i++) {
+                buffers[i] = pool.acquireNative(width * height * 4);
+                views[i] = buffers[i].asIntBuffer();
+                planes[i] = Native.getDirectBufferPointer(buffers[i]);
+            }
+        }
+        
+        void release(FrameBufferPool pool) {
+            for (ByteBuffer buffer : buffers) {
+                pool.releaseNative(buffer);
+            }
+        }
+    }
+    
+    private final FrameBufferPool pool = new FrameBufferPool();
+    
+    // Buffers replaced by a new format, returned to the pool by the render
+    // thread once it can no longer be painting from them
+    private final Queue<Frames> retired = new ConcurrentLinkedQueue<>();
+    
+    // Created once and reused for every file
+    private Surface surface;
+    
+    private volatile Canvas canvas;
+    private volatile Frames frames;
+    private volatile boolean running;
+    private volatile Thread thread;
+    
+    // Source size from the last format negotiation
+    private volatile int sourceWidth;
+    private volatile int sourceHeight;
+    
+    // Adaptive mode, and what asks VLC for a new format
+    private volatile boolean adaptive = true;
+    private volatile Runnable renegotiation;
+    
+    // When the canvas was first seen far from the buffer size, and when a new
+    // format was last asked for; render thread only
+    private long resizeSeenNanos;
+    private long renegotiatedNanos;
+    
+    // Image painted on the canvas, only used by the render thread
+    private BufferedImage image;
+    private int[] pixels;
+    
+    private final RenderMetrics metrics = new RenderMetrics();
+    
+    // Statistics drawn over the video, refreshed twice a second; render thread only
+    private volatile boolean overlayVisible;
+    private String[] overlayLines = new String[0];
+    private long overlayUpdatedNanos;
+    
+    // libvlc callbacks, held here so they are not collected while VLC uses them
+    private final libvlc_video_format_cb formatCallback = new libvlc_video_format_cb() {
+        @Override
+        public int format(PointerByReference opaque, PointerByReference chroma, IntByReference width,
+                IntByReference height, PointerByReference pitches, PointerByReference lines) {
+            return setupFormat(chroma, width, height, pitches, lines);
+        }
+    };
+    private final libvlc_video_cleanup_cb cleanupCallback = new libvlc_video_cleanup_cb() {
+        @Override
+        public void cleanup(Pointer opaque) {
+            // The buffers stay allocated for the next format of the same size
+        }
+    };
+    private final libvlc_lock_callback_t lockCallback = new libvlc_lock_callback_t() {
+        @Override
+        public Pointer lock(Pointer opaque, PointerByReference planes) {
+            Frames current = frames;
+            planes.getPointer().setPointer(0, current.planes[current.back]);
+            return null;
+        }
+    };
+    private final libvlc_unlock_callback_t unlockCallback = new libvlc_unlock_callback_t() {
+        @Override
+        public void unlock(Pointer opaque, Pointer picture, Pointer plane) {
+            // The frame is published on display, not when decoding finishes
+        }
+    };
+    private final libvlc_display_callback_t displayCallback = new libvlc_display_callback_t() {
+        @Override
+        public void display(Pointer opaque, Pointer picture) {
+            publish();
+        }
+    };
+    
+    /**
+     * Video surface that has VLC decode into this renderer's buffers.
+     */
+    private final class Surface extends VideoSurface {
+        
+        Surface() {
+            super(VideoSurfaceAdapters.getVideoSurfaceAdapter());
+        }
+        
+        @Override
+        public void attach(MediaPlayer mediaPlayer) {
+            LibVlc.libvlc_video_set_format_callbacks(mediaPlayer.mediaPlayerInstance(), formatCallback, cleanupCallback);
+            LibVlc.libvlc_video_set_callbacks(mediaPlayer.mediaPlayerInstance(), lockCallback, unlockCallback,
+                    displayCallback, null);
+        }
+    }
+    
+    /**
+     * Gets the video surface that renders through this renderer, creating
+     * it on first use.
+     * 
+     * @return The video surface
+     */
+    synchronized VideoSurface getVideoSurface() {
+        if (surface == null) {
+            surface = new Surface();
+        }
+        return surface;
+    }
+    
+    /**
+     * Sets the canvas frames are painted on.
+     * 
+     * @param canvas The video canvas
+     */
+    void setCanvas(Canvas canvas) {
+        this.canvas = canvas;
+    }
+    
+    /**
+     * Sets what makes VLC negotiate the video format again, for adaptive
+     * mode. It is run on the render thread and must not block.
+     * 
+     * @param renegotiation Restarts the video output, or null to keep the first format
+     */
+    void setRenegotiation(Runnable renegotiation) {
+        this.renegotiation = renegotiation;
+    }
+    
+    /**
+     * Turns adaptive mode on or off. Takes effect with the next format
+     * negotiation, which the render thread asks for once the buffer size
+     * no longer fits.
+     * 
+     * @param adaptive true to decode at the canvas size, false for the source size
+     */
+    void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+    
+    /**
+     * Checks whether adaptive mode is on.
+     * 
+     * @return true if frames are decoded at the canvas size
+     */
+    boolean isAdaptive() {
+        return adaptive;
+    }
+    
+    /**
+     * Starts the render thread if it is not running.
+     */
+    synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        Thread renderer = new Thread(this::run, "MediaPlayerManager-render");
+        renderer.setDaemon(true);
+        thread = renderer;
+        renderer.start();
+    }
+    
+    /**
+     * Stops the render thread and waits for it to finish painting.
+     */
+    synchronized void stop() {
+        Thread renderer = thread;
+        if (renderer == null) {
+            return;
+        }
+        running = false;
+        thread = null;
+        LockSupport.unpark(renderer);
+        try {
+            renderer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Stops the render thread and frees the pooled buffers. The current
+     * frame buffers are kept, VLC may still be decoding into them.
+     */
+    void release() {
+        stop();
+        retired.clear();
+        pool.clear();
+    }
+    
+    /**
+     * Gets the pool the frame buffers come from.
+     * 
+     * @return The frame buffer pool
+     */
+    FrameBufferPool getPool() {
+        return pool;
+    }
+    
+    /**
+     * Gets the counters and timings of the render pipeline.
+     * 
+     * @return The render metrics
+     */
+    RenderMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Shows or hides the render statistics over the video.
+     * 
+     * @param visible true to draw the overlay
+     */
+    void setOverlayVisible(boolean visible) {
+        overlayVisible = visible;
+    }
+    
+    /**
+     * Checks whether the render statistics are drawn over the video.
+     * 
+     * @return true if the overlay is shown
+     */
+    boolean isOverlayVisible() {
+        return overlayVisible;
+    }
+    
+    /**
+     * Answers VLC's format negotiation with 32-bit RGB at the output size,
+     * replacing the buffers if the size changed.
+     * 
+     * @return Number of picture buffers VLC may lock at once, 0 to refuse the format
+     */
+    private int setupFormat(PointerByReference chroma, IntByReference width, IntByReference height,
+            PointerByReference pitches, PointerByReference lines) {
+        if (width.getValue() <= 0 || height.getValue() <= 0) {
+            return 0;
+        }
+        sourceWidth = width.getValue();
+        sourceHeight = height.getValue();
+        
+        int[] size = outputSize();
+        int w = size[0];
+        int h = size[1];
+        width.setValue(w);
+        height.setValue(h);
+        
+        Frames current = frames;
+        if (current == null || current.width != w || current.height != h) {
+            LOGGER.info("Resizing video buffers to " + w + "x" + h);
+            frames = new Frames(w, h, pool);
+            if (current != null) {
+                // VLC is done with the old buffers before it asks for a new format
+                retired.add(current);
+            }
+        }
+        
+        chroma.getPointer().write(0, CHROMA, 0, CHROMA.length);
+        pitches.getPointer().setInt(0, w * 4);
+        lines.getPointer().setInt(0, h);
+        
+        // A single picture in VLC's pool: it is displayed before the next one
+        // is locked, so the back buffer handed out is always the one published
+        return 1;
+    }
+    
+    /**
+     * Publishes the filled back buffer as the newest frame and wakes the
+     * render thread. Never blocks.
+     */
+    private void publish() {
+        Frames current = frames;
+        if (current == null) {
+            return;
+        }
+        
+        int previous = current.middle.getAndSet(current.back | FRESH);
+        current.back = previous & ~FRESH;
+        metrics.frameReceived(System.nanoTime());
+        if ((previous & FRESH) != 0) {
+            metrics.frameDropped();
+        }
+        
+        Thread renderer = thread;
+        if (renderer != null) {
+            LockSupport.unpark(renderer);
+        }
+    }
+    
+    /**
+     * Paints each new frame as it arrives until stopped.
+     */
+    private void run() {
+        while (running) {
+            for (Frames old; (old = retired.poll()) != null; ) {
+                old.release(pool);
+            }
+            
+            Frames current = frames;
+            if (current == null || (current.middle.get() & FRESH) == 0) {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+                continue;
+            }
+            
+            current.front = current.middle.getAndSet(current.front) & ~FRESH;
+            try {
+                long start = System.nanoTime();
+                copyFrame(current, current.front);
+                long copied = System.nanoTime();
+                paint(image);
+                long painted = System.nanoTime();
+                metrics.framePainted(copied - start, painted - copied, painted);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE, "Could not paint video frame", e);
+            }
+            checkOutputSize(current);
+        }
+    }
+    
+    /**
+     * Gets the frame size to ask VLC for. In adaptive mode that is the
+     * canvas size, scaled down to fit in the source when the canvas is
+     * larger so VLC never scales up; otherwise the source size.
+     * 
+     * @return Width and height in pixels
+     */
+    private int[] outputSize() {
+        int w = sourceWidth;
+        int h = sourceHeight;
+        Canvas target = canvas;
+        if (!adaptive || target == null || target.getWidth() <= 0 || target.getHeight() <= 0) {
+            return new int[] {w, h};
+        }
+        
+        double scale = Math.min(1.0, Math.min((double) w / target.getWidth(), (double) h / target.getHeight()));
+        int outWidth = Math.max(MIN_SIZE, (int) (target.getWidth() * scale) & ~1);
+        int outHeight = Math.max(MIN_SIZE, (int) (target.getHeight() * scale) & ~1);
+        return new int[] {Math.min(w, outWidth), Math.min(h, outHeight)};
+    }
+    
+    /**
+     * Asks for a new format once the output size has stayed well below
+     * the buffer size for a while, so dragging a window edge does not
+     * restart the video output on every step. Growing is left to the next
+     * negotiation VLC makes by itself, as each restart stalls the picture
+     * until the next keyframe.
+     */
+    private void checkOutputSize(Frames current) {
+        Runnable restart = renegotiation;
+        if (restart == null || sourceWidth <= 0) {
+            return;
+        }
+        
+        int[] size = outputSize();
+        boolean far = current.width - size[0] > current.width * RESIZE_THRESHOLD
+                || current.height - size[1] > current.height * RESIZE_THRESHOLD;
+        long now = System.nanoTime();
+        if (!far) {
+            resizeSeenNanos = 0;
+        } else if (resizeSeenNanos == 0) {
+            resizeSeenNanos = now;
+        } else if (now - resizeSeenNanos >= RESIZE_SETTLE_NANOS && now - renegotiatedNanos >= MIN_RENEGOTIATION_NANOS) {
+            LOGGER.fine("Renegotiating video format for " + size[0] + "x" + size[1]);
+            resizeSeenNanos = 0;
+            renegotiatedNanos = now;
+            restart.run();
+        }
+    }
+    
+    /**
+     * Copies a native frame into the painted image, the one pass the JVM
+     * makes over the frame.
+     */
+    private void copyFrame(Frames current, int index) {
+        if (image == null || image.getWidth() != current.width || image.getHeight() != current.height) {
+            if (pixels != null) {
+                pool.releasePixels(pixels);
+            }
+            pixels = pool.acquirePixels(current.width * current.height);
+            image = newImage(pixels, current.width, current.height);
+        }
+        IntBuffer source = current.views[index];
+        source.clear();
+        source.get(pixels, 0, current.width * current.height);
+    }
+    
+    /**
+     * Draws a frame scaled to the canvas.
+     */
+    private void paint(BufferedImage frame) {
+        Canvas target = canvas;
+        if (target == null || !target.isDisplayable() || !target.isVisible()) {
+            return;
+        }
+        Graphics g = target.getGraphics();
+        if (g != null) {
+            try {
+                g.drawImage(frame, 0, 0, target.getWidth(), target.getHeight(), null);
+                if (overlayVisible) {
+                    paintOverlay(g, frame);
+                }
+            } finally {
+                g.dispose();
+            }
+        }
+    }
+    
+    /**
+     * Draws the render statistics in the top left corner. The text is
+     * rebuilt twice a second, not for every frame.
+     */
+    private void paintOverlay(Graphics g, BufferedImage frame) {
+        long now = System.nanoTime();
+        if (now - overlayUpdatedNanos >= OVERLAY_REFRESH_NANOS) {
+            overlayUpdatedNanos = now;
+            overlayLines = new String[] {
+                String.format(Locale.ROOT, "%.1f fps  %dx%d", metrics.getFramesPerSecond(),
+                        frame.getWidth(), frame.getHeight()),
+                "received " + metrics.getFramesReceived() + "  painted " + metrics.getFramesPainted()
+                        + "  dropped " + metrics.getFramesDropped(),
+                "interval " + metrics.getFrameIntervalHistogram(),
+                "copy " + metrics.getCopyTimeHistogram(),
+                "paint " + metrics.getPaintTimeHistogram()
+            };
+        }
+        
+        FontMetrics font = g.getFontMetrics();
+        int lineHeight = font.getHeight();
+        int width = 0;
+        for (String line : overlayLines) {
+            width = Math.max(width, font.stringWidth(line));
+        }
+        g.setColor(OVERLAY_BACKGROUND);
+        g.fillRect(0, 0, width + 2 * OVERLAY_MARGIN, lineHeight * overlayLines.length + 2 * OVERLAY_MARGIN);
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < overlayLines.length; i++) {
+            g.drawString(overlayLines[i], OVERLAY_MARGIN, OVERLAY_MARGIN + i * lineHeight + font.getAscent());
+        }
+    }
+    
+    /**
+     * Wraps a pooled pixel array, which may be longer than the frame, as a
+     * TYPE_INT_RGB image so Java2D keeps its fast blit.
+     */
+    private static BufferedImage newImage(int[] pixels, int width, int height) {
+        DirectColorModel model = new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+        WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, width * height), width, height,
+                width, model.getMasks(), null);
+        return new BufferedImage(model, raster, false, null);
+    }
+}
@@ -0,0 +1,128 @@
+package com.audioapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sink that writes the player's output to a 16-bit PCM WAV file as fast
+ * as it is produced. The RIFF and data chunk sizes are filled in when the
+ * sink is closed. Every playback start or seek opens the sink again, so
+ * the file holds one uninterrupted run. Samples go through one reusable
+ * byte buffer and its 16-bit view, so writing does not allocate.
+ */
+public class WavFileSink extends NullAudioSink {
+    
+    private static final Logger LOGGER = Logger.getLogger(WavFileSink.class.getName());
+    
+    // Canonical header: RIFF, fmt and data chunk headers
+    private static final int HEADER_SIZE = 44;
+    
+    private final File file;
+    private FileChannel channel;
+    private ByteBuffer bytes = ByteBuffer.allocate(0);
+    private ShortBuffer shorts = bytes.asShortBuffer();
+    private long dataBytes;
+    
+    /**
+     * Creates a sink that will write to a file, replacing it when opened.
+     * 
+     * @param file The WAV file to write
+     */
+    public WavFileSink(File file) {
+        this.file = file;
+    }
+    
+    @Override
+    public synchronized void open(int sampleRate, int channels, int bufferMillis) throws Exception {
+        super.open(sampleRate, channels, bufferMillis);
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        out.setLength(0);
+        channel = out.getChannel();
+        dataBytes = 0;
+        
+        // Sizes are written as 0 until close
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0x46464952).putInt(0).putInt(0x45564157);
+        header.putInt(0x20746D66).putInt(16).putShort((short) 1).putShort((short) channels);
+        header.putInt(sampleRate).putInt(sampleRate * channels * 2).putShort((short) (channels * 2)).putShort((short) 16);
+        header.putInt(0x61746164).putInt(0);
+        header.flip();
+        channel.write(header, 0);
+        channel.position(HEADER_SIZE);
+        
+        LOGGER.info("Writing " + sampleRate + "Hz, " + channels + " channel(s) to " + file.getName());
+    }
+    
+    @Override
+    public synchronized void write(short[] samples, int offset, int length) {
+        if (channel == null) {
+            return;
+        }
+        
+        if (bytes.capacity() < length * 2) {
+            bytes = ByteBuffer.allocate(length * 2).order(ByteOrder.LITTLE_ENDIAN);
+            shorts = bytes.asShortBuffer();
+        }
+        bytes.clear();
+        shorts.clear();
+        shorts.put(samples, offset, length);
+        bytes.limit(length * 2);
+        try {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            dataBytes += length * 2;
+            super.write(samples, offset, length);
+        } catch (IOException e) {
+            // The output thread only sees a sink that stops taking audio
+            LOGGER.log(Level.WARNING, "Could not write to " + file.getName(), e);
+            closeFile();
+        }
+    }
+    
+    @Override
+    public void close() {
+        closeFile();
+        super.close();
+    }
+    
+    /**
+     * Gets the file the sink writes.
+     * 
+     * @return The WAV file
+     */
+    public File getFile() {
+        return file;
+    }
+    
+    /**
+     * Fills in the chunk sizes and closes the file.
+     */
+    private synchronized void closeFile() {
+        FileChannel current = channel;
+        channel = null;
+        if (current == null) {
+            return;
+        }
+        
+        try {
+            ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            size.putInt(0, (int) Math.min(0xFFFFFFFFL, HEADER_SIZE - 8 + dataBytes));
+            current.write(size, 4);
+            size.rewind();
+            size.putInt(0, (int) Math.min(0xFFFFFFFFL, dataBytes));
+            current.write(size, HEADER_SIZE - 4);
+            current.close();
+            LOGGER.info("Wrote " + dataBytes + " bytes of audio to " + file.getName());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not finish " + file.getName(), e);
+        }
+    }
+}
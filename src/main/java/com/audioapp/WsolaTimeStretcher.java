@@ -0,0 +1,300 @@
+package com.audioapp;
+
+import java.util.Arrays;
+
+/**
+ * Changes the speed of interleaved 16-bit PCM without changing its pitch,
+ * by waveform-similarity overlap-add (WSOLA). Windowed frames are taken
+ * from the input at the speed's pace and overlapped at a fixed pace in the
+ * output; each frame is shifted within a small search range to where it
+ * best continues the previous one, so periodic sounds stay in phase. The
+ * search runs on a decimated mono mix first and is refined around the best
+ * match. Buffers grow to the chunk size once and are then reused.
+ */
+public final class WsolaTimeStretcher {
+    
+    // Speed range
+    public static final double MIN_SPEED = 0.5;
+    public static final double MAX_SPEED = 2.0;
+    
+    // Length of a frame; frames overlap by half
+    private static final int FRAME_MS = 20;
+    
+    // How far a frame may move from its nominal position, each way
+    private static final int SEARCH_MS = 8;
+    
+    // Sample rate the coarse search is decimated to
+    private static final int SEARCH_RATE = 11025;
+    
+    private final int sampleRate;
+    private final int channels;
+    
+    // Frame and hop length, search range and coarse search step, in frames
+    private final int frameLength;
+    private final int hop;
+    private final int searchRange;
+    private final int searchStep;
+    
+    // Fade-in half of the window, the fade-out half is the same read backwards
+    private final float[] window;
+    
+    // Second half of the last frame, faded out and waiting for the next one
+    private final float[] tail;
+    
+    // Input not yet consumed, interleaved and as a mono mix for the search
+    private short[] input = new short[0];
+    private float[] mono = new float[0];
+    private int inputFrames;
+    
+    // Nominal start of the next frame and start of the last frame taken, in input frames
+    private double nominal;
+    private int previous;
+    
+    // No frame taken since the last reset
+    private boolean first;
+    
+    private double speed = 1.0;
+    
+    // Samples produced by the last call
+    private short[] output = new short[0];
+    
+    /**
+     * Creates a stretcher at normal speed.
+     * 
+     * @param sampleRate Sample rate in Hz
+     * @param channels Number of interleaved channels
+     */
+    public WsolaTimeStretcher(int sampleRate, int channels) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        
+        hop = Math.max(16, sampleRate * FRAME_MS / 2000);
+        frameLength = 2 * hop;
+        searchRange = sampleRate * SEARCH_MS / 1000;
+        searchStep = Math.max(1, sampleRate / SEARCH_RATE);
+        
+        // sin^2 rising half; it and the falling half add up to one
+        window = new float[hop];
+        for (int i = 0; i < hop; i++) {
+            double s = Math.sin(Math.PI * (i + 0.5) / frameLength);
+            window[i] = (float) (s * s);
+        }
+        tail = new float[hop * channels];
+        
+        reset();
+    }
+    
+    /**
+     * Sets the speed. Takes effect with the next frame.
+     * 
+     * @param speed Playback speed, clamped to MIN_SPEED - MAX_SPEED
+     */
+    public void setSpeed(double speed) {
+        this.speed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+    }
+    
+    /**
+     * Gets the speed.
+     * 
+     * @return Playback speed, 1.0 is normal
+     */
+    public double getSpeed() {
+        return speed;
+    }
+    
+    /**
+     * Gets the sample rate.
+     * 
+     * @return Sample rate in Hz
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+    
+    /**
+     * Stretches a block of input. The output lags the input by about one
+     * frame plus the search range; {@link #flush()} releases the rest.
+     * 
+     * @param samples Interleaved input samples
+     * @param offset Index of the first sample
+     * @param length Number of samples, a multiple of the channel count
+     * @return Number of samples written to {@link #getOutput()}
+     */
+    public int process(short[] samples, int offset, int length) {
+        int frames = length / channels;
+        ensureInput(frames);
+        System.arraycopy(samples, offset, input, inputFrames * channels, frames * channels);
+        for (int f = 0, i = offset; f < frames; f++) {
+            float sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += samples[i++];
+            }
+            mono[inputFrames + f] = sum;
+        }
+        inputFrames += frames;
+        return run();
+    }
+    
+    /**
+     * Releases the input still held back, unstretched, and starts over.
+     * The held input is less than a frame plus the search range, and it
+     * continues the last frame exactly, so nothing clicks.
+     * 
+     * @return Number of samples written to {@link #getOutput()}
+     */
+    public int flush() {
+        int from = first ? 0 : previous + hop;
+        int count = Math.max(0, inputFrames - from) * channels;
+        ensureOutput(count);
+        System.arraycopy(input, from * channels, output, 0, count);
+        reset();
+        return count;
+    }
+    
+    /**
+     * Discards buffered input, for a jump in the stream.
+     */
+    public void reset() {
+        inputFrames = 0;
+        nominal = 0;
+        previous = 0;
+        first = true;
+        Arrays.fill(tail, 0);
+    }
+    
+    /**
+     * Gets the samples produced by the last call.
+     * 
+     * @return Output buffer, valid until the next call
+     */
+    public short[] getOutput() {
+        return output;
+    }
+    
+    /**
+     * Emits one hop of output for every frame the buffered input allows,
+     * then drops the input no later frame can reach.
+     */
+    private int run() {
+        double analysisHop = hop * speed;
+        ensureOutput(((int) (inputFrames / analysisHop) + 1) * hop * channels);
+        
+        int count = 0;
+        while (true) {
+            int center = (int) nominal;
+            int low = Math.max(0, center - searchRange);
+            int high = center + searchRange;
+            if (high + frameLength > inputFrames || (!first && previous + frameLength > inputFrames)) {
+                break;
+            }
+            
+            // The first frame has nothing to continue and is not faded in
+            int start;
+            if (first) {
+                start = center;
+                first = false;
+                for (int i = 0, x = start * channels; i < hop * channels; i++) {
+                    output[count++] = input[x + i];
+                }
+            } else {
+                start = findBestMatch(previous + hop, low, high);
+                for (int i = 0, x = start * channels, t = 0; i < hop; i++) {
+                    float w = window[i];
+                    for (int c = 0; c < channels; c++, x++, t++) {
+                        output[count++] = GainStage.clip(tail[t] + input[x] * w);
+                    }
+                }
+            }
+            
+            for (int i = 0, x = (start + hop) * channels, t = 0; i < hop; i++) {
+                float w = window[hop - 1 - i];
+                for (int c = 0; c < channels; c++, x++, t++) {
+                    tail[t] = input[x] * w;
+                }
+            }
+            
+            previous = start;
+            nominal += analysisHop;
+        }
+        
+        // Keep what the next search and the next overlap still need
+        int keep = first ? 0 : Math.min((int) nominal - searchRange, previous + hop);
+        int consumed = Math.max(0, Math.min(keep, inputFrames));
+        if (consumed > 0) {
+            System.arraycopy(input, consumed * channels, input, 0, (inputFrames - consumed) * channels);
+            System.arraycopy(mono, consumed, mono, 0, inputFrames - consumed);
+            inputFrames -= consumed;
+            nominal -= consumed;
+            previous -= consumed;
+        }
+        return count;
+    }
+    
+    /**
+     * Finds the frame start in a range whose first half best matches the
+     * audio that naturally follows the last frame. A coarse pass compares
+     * every searchStep-th sample at every searchStep-th start, then the
+     * best start is refined at full resolution.
+     */
+    private int findBestMatch(int reference, int low, int high) {
+        int best = low;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int start = low; start <= high; start += searchStep) {
+            double score = similarity(reference, start, searchStep);
+            if (score > bestScore) {
+                bestScore = score;
+                best = start;
+            }
+        }
+        
+        if (searchStep > 1) {
+            int from = Math.max(low, best - searchStep + 1);
+            int to = Math.min(high, best + searchStep - 1);
+            bestScore = Double.NEGATIVE_INFINITY;
+            for (int start = from; start <= to; start++) {
+                double score = similarity(reference, start, 1);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = start;
+                }
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Cross-correlation of two half frames of the mono mix, normalized by
+     * the candidate's energy so loud passages are not favored.
+     */
+    private double similarity(int reference, int candidate, int step) {
+        double correlation = 0;
+        double energy = 1e-9;
+        for (int i = 0; i < hop; i += step) {
+            float c = mono[candidate + i];
+            correlation += mono[reference + i] * c;
+            energy += c * c;
+        }
+        return correlation / Math.sqrt(energy);
+    }
+    
+    /**
+     * Grows the input buffers to hold more frames.
+     */
+    private void ensureInput(int frames) {
+        int needed = inputFrames + frames;
+        if (mono.length < needed) {
+            int size = Math.max(needed, mono.length * 2);
+            input = Arrays.copyOf(input, size * channels);
+            mono = Arrays.copyOf(mono, size);
+        }
+    }
+    
+    /**
+     * Grows the output buffer to hold a number of samples.
+     */
+    private void ensureOutput(int samples) {
+        if (output.length < samples) {
+            output = new short[samples];
+        }
+    }
+}